@@ -0,0 +1,93 @@
+package com.mach33.research.agent;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Caps concurrent calls to one agent. Callers beyond the limit wait in a bounded
+ * queue for at most maxWait; once the queue is full they are rejected immediately,
+ * so a slow agent cannot absorb every request thread.
+ */
+public class AgentBulkhead {
+
+    private final String agentType;
+    private final int maxConcurrent;
+    private final int maxWaiting;
+    private final Duration maxWait;
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final LongAdder queueFullRejections = new LongAdder();
+    private final LongAdder waitTimeoutRejections = new LongAdder();
+    private final LongSupplier retryAfterSeconds;
+
+    /**
+     * @param retryAfterSeconds suggested client back-off when a call is rejected
+     */
+    public AgentBulkhead(String agentType, int maxConcurrent, int maxWaiting, Duration maxWait,
+                         LongSupplier retryAfterSeconds) {
+        this.agentType = agentType;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxWaiting = Math.max(0, maxWaiting);
+        this.maxWait = maxWait;
+        this.permits = new Semaphore(this.maxConcurrent, true);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Take a permit, waiting up to maxWait; every successful acquire must be paired with release()
+     */
+    public void acquire() throws InterruptedException {
+        if (permits.tryAcquire()) {
+            return;
+        }
+        if (waiting.incrementAndGet() > maxWaiting) {
+            waiting.decrementAndGet();
+            queueFullRejections.increment();
+            throw new AgentBusyException(agentType, AgentBusyException.Reason.QUEUE_FULL, retryAfterSeconds.getAsLong());
+        }
+        try {
+            if (!permits.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS)) {
+                waitTimeoutRejections.increment();
+                throw new AgentBusyException(agentType, AgentBusyException.Reason.WAIT_TIMEOUT, retryAfterSeconds.getAsLong());
+            }
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public int getMaxWaiting() {
+        return maxWaiting;
+    }
+
+    public Duration getMaxWait() {
+        return maxWait;
+    }
+
+    public int getActive() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    public long getQueueFullRejections() {
+        return queueFullRejections.sum();
+    }
+
+    public long getWaitTimeoutRejections() {
+        return waitTimeoutRejections.sum();
+    }
+}
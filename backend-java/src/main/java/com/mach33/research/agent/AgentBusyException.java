@@ -0,0 +1,31 @@
+package com.mach33.research.agent;
+
+/**
+ * Thrown when an agent's bulkhead rejects a call instead of letting it queue
+ */
+public class AgentBusyException extends RuntimeException {
+    
+    public enum Reason {
+        QUEUE_FULL,   // the bounded wait queue was already full
+        WAIT_TIMEOUT  // waited the maximum time without getting a permit
+    }
+    
+    private static final long serialVersionUID = 1L;
+    
+    private final Reason reason;
+    private final long retryAfterSeconds;
+    
+    public AgentBusyException(String agentType, Reason reason, long retryAfterSeconds) {
+        super(agentType + " is saturated (" + reason + ")");
+        this.reason = reason;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+    
+    public Reason getReason() {
+        return reason;
+    }
+    
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,252 @@
+package com.mach33.research.agent;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Dispatches one prompt to several agents concurrently under a shared deadline.
+ * Each agent gets a hedged second attempt if its first has not answered within the
+ * hedge delay, and an immediate retry if an attempt fails, up to maxAttempts.
+ */
+public class AgentFanOut {
+
+    public enum Mode {
+        FIRST,    // return the first usable answer and cancel the rest
+        ENSEMBLE  // wait for every agent until the deadline and combine the answers
+    }
+
+    /**
+     * Invokes a single provider; lets the caller wrap calls with its own instrumentation
+     */
+    @FunctionalInterface
+    public interface AgentInvoker {
+        AgentReply invoke(AgentProvider provider, String prompt) throws Exception;
+    }
+
+    private final ExecutorService executor;
+    private final ScheduledExecutorService hedgeScheduler;
+    private final AgentInvoker invoker;
+
+    public AgentFanOut(ExecutorService executor, ScheduledExecutorService hedgeScheduler, AgentInvoker invoker) {
+        this.executor = executor;
+        this.hedgeScheduler = hedgeScheduler;
+        this.invoker = invoker;
+    }
+
+    /**
+     * Dispatch the prompt to all providers and wait according to the mode.
+     * Never waits longer than the deadline; outstanding attempts are cancelled on return.
+     */
+    public FanOutResult dispatch(Collection<AgentProvider> providers, String prompt, Mode mode,
+                                 Duration deadline, Duration hedgeDelay, int maxAttempts) {
+        List<AgentCall> calls = new ArrayList<>();
+        for (AgentProvider provider : providers) {
+            AgentCall call = new AgentCall(provider, prompt, Math.max(1, maxAttempts));
+            calls.add(call);
+            call.launch();
+            if (call.maxAttempts > 1) {
+                hedgeScheduler.schedule(call::hedge, hedgeDelay.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        try {
+            if (mode == Mode.FIRST) {
+                awaitFirst(calls, deadline);
+            } else {
+                awaitAll(calls, deadline);
+            }
+        } finally {
+            calls.forEach(AgentCall::cancel);
+        }
+
+        FanOutResult result = new FanOutResult();
+        result.mode = mode;
+        for (AgentCall call : calls) {
+            AgentOutcome outcome = call.toOutcome();
+            result.outcomes.add(outcome);
+            if (outcome.reply != null && (result.winner == null || isBetter(mode, outcome, result.winner))) {
+                result.winner = outcome;
+            }
+        }
+        if (mode == Mode.FIRST && result.winner != null) {
+            // Agents still running when the first answer arrived were cut off, not timed out
+            result.outcomes.stream()
+                    .filter(o -> "TIMED_OUT".equals(o.status))
+                    .forEach(o -> o.status = "CANCELLED");
+        }
+        return result;
+    }
+
+    private void awaitFirst(List<AgentCall> calls, Duration deadline) {
+        CompletableFuture<Void> firstGood = new CompletableFuture<>();
+        CompletableFuture<Void> allDone = CompletableFuture.allOf(
+                calls.stream().map(c -> c.result.handle((r, e) -> null)).toArray(CompletableFuture[]::new));
+        calls.forEach(c -> c.result.thenRun(() -> firstGood.complete(null)));
+        allDone.thenRun(() -> firstGood.complete(null));
+        await(firstGood, deadline);
+    }
+
+    private void awaitAll(List<AgentCall> calls, Duration deadline) {
+        await(CompletableFuture.allOf(
+                calls.stream().map(c -> c.result.handle((r, e) -> null)).toArray(CompletableFuture[]::new)), deadline);
+    }
+
+    private static void await(CompletableFuture<?> future, Duration deadline) {
+        try {
+            future.get(deadline.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            // Deadline reached; whatever completed so far is reported
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * In FIRST mode the earliest answer wins; in ENSEMBLE mode the most confident one
+     */
+    private static boolean isBetter(Mode mode, AgentOutcome candidate, AgentOutcome current) {
+        if (mode == Mode.FIRST) {
+            return candidate.latencyMs < current.latencyMs;
+        }
+        return candidate.reply.confidence > current.reply.confidence;
+    }
+
+    /**
+     * In-flight state for one agent: its attempts and the first usable reply
+     */
+    private class AgentCall {
+        final AgentProvider provider;
+        final String prompt;
+        final int maxAttempts;
+        final long startNanos = System.nanoTime();
+        final CompletableFuture<AgentReply> result = new CompletableFuture<>();
+        final List<Future<?>> attempts = new ArrayList<>();
+        int launched;
+        int pending;
+        boolean cancelled;
+        volatile long finishedNanos;
+        volatile Throwable lastError;
+
+        AgentCall(AgentProvider provider, String prompt, int maxAttempts) {
+            this.provider = provider;
+            this.prompt = prompt;
+            this.maxAttempts = maxAttempts;
+        }
+
+        /**
+         * Start another attempt unless the result is known or attempts are exhausted
+         */
+        synchronized void launch() {
+            if (cancelled || result.isDone() || launched >= maxAttempts) {
+                return;
+            }
+            launched++;
+            pending++;
+            try {
+                attempts.add(executor.submit(this::runAttempt));
+            } catch (RejectedExecutionException e) {
+                attemptFailed(e);
+            }
+        }
+
+        void hedge() {
+            if (!result.isDone()) {
+                launch();
+            }
+        }
+
+        private void runAttempt() {
+            try {
+                AgentReply reply = invoker.invoke(provider, prompt);
+                if (reply != null && reply.isGood()) {
+                    succeeded(reply);
+                } else {
+                    attemptFailed(new IllegalStateException("Empty reply from " + provider.getAgentType()));
+                }
+            } catch (Throwable t) {
+                attemptFailed(t);
+            }
+        }
+
+        private synchronized void succeeded(AgentReply reply) {
+            pending--;
+            if (!result.isDone()) {
+                finishedNanos = System.nanoTime();
+                result.complete(reply);
+            }
+        }
+
+        /**
+         * Retry immediately if attempts remain, otherwise fail once no attempt is still running
+         */
+        private synchronized void attemptFailed(Throwable error) {
+            pending--;
+            if (result.isDone() || cancelled) {
+                return;
+            }
+            lastError = error;
+            if (launched < maxAttempts) {
+                launch();
+            } else if (pending == 0) {
+                finishedNanos = System.nanoTime();
+                result.completeExceptionally(error);
+            }
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            attempts.forEach(a -> a.cancel(true));
+        }
+
+        synchronized AgentOutcome toOutcome() {
+            AgentOutcome outcome = new AgentOutcome();
+            outcome.agentType = provider.getAgentType();
+            outcome.attempts = launched;
+            if (result.isDone() && !result.isCompletedExceptionally()) {
+                outcome.reply = result.join();
+                outcome.status = "SUCCESS";
+                outcome.latencyMs = TimeUnit.NANOSECONDS.toMillis(finishedNanos - startNanos);
+            } else if (result.isCompletedExceptionally()) {
+                outcome.status = "FAILED";
+                outcome.latencyMs = TimeUnit.NANOSECONDS.toMillis(finishedNanos - startNanos);
+                outcome.error = lastError != null ? lastError.getMessage() : null;
+            } else {
+                outcome.status = "TIMED_OUT";
+                outcome.latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            }
+            return outcome;
+        }
+    }
+
+    /**
+     * Result of one agent within a fan-out
+     */
+    public static class AgentOutcome {
+        public String agentType;
+        public String status; // SUCCESS, FAILED, TIMED_OUT, CANCELLED
+        public long latencyMs;
+        public int attempts;
+        public String error;
+        public AgentReply reply;
+    }
+
+    /**
+     * Result of a whole fan-out
+     */
+    public static class FanOutResult {
+        public Mode mode;
+        public AgentOutcome winner;
+        public List<AgentOutcome> outcomes = new ArrayList<>();
+
+        public List<AgentOutcome> successes() {
+            List<AgentOutcome> successes = new ArrayList<>();
+            for (AgentOutcome outcome : outcomes) {
+                if (outcome.reply != null) {
+                    successes.add(outcome);
+                }
+            }
+            return successes;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.mach33.research.agent;
+
+import java.util.function.Consumer;
+
+/**
+ * Backend for a single AI agent type (CLAUDE, CHATGPT, GROK).
+ * Implementations may call a remote model or simulate one locally.
+ */
+public interface AgentProvider {
+    
+    /**
+     * Agent type handled by this provider, upper case
+     */
+    String getAgentType();
+    
+    /**
+     * Model name reported in message metadata
+     */
+    String getModelName();
+    
+    /**
+     * Generate a reply to the prompt, passing text chunks to onChunk as they are produced.
+     * Implementations should stop promptly when the calling thread is interrupted.
+     */
+    AgentReply generate(String prompt, Consumer<String> onChunk) throws Exception;
+}
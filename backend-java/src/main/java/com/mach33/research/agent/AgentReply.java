@@ -0,0 +1,25 @@
+package com.mach33.research.agent;
+
+/**
+ * Completed reply from an agent provider
+ */
+public class AgentReply {
+    public final String agentType;
+    public final String model;
+    public final String content;
+    public final double confidence;
+    
+    public AgentReply(String agentType, String model, String content, double confidence) {
+        this.agentType = agentType;
+        this.model = model;
+        this.content = content;
+        this.confidence = confidence;
+    }
+    
+    /**
+     * Whether the reply carries a usable answer
+     */
+    public boolean isGood() {
+        return content != null && !content.isBlank();
+    }
+}
@@ -0,0 +1,92 @@
+package com.mach33.research.agent;
+
+import com.mach33.research.util.RollingLatencyHistogram;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call statistics for one agent type: in-flight calls, lifetime outcome counts
+ * and a rolling latency/error window. All updates are lock-free.
+ */
+public class AgentStats {
+
+    private final RollingLatencyHistogram window;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder cancellations = new LongAdder();
+    private volatile long lastCompletedMillis;
+
+    public AgentStats(Duration window, int slices) {
+        this.window = new RollingLatencyHistogram(window, slices);
+    }
+
+    /**
+     * Mark a call as started; pass the returned start time to exactly one completion method
+     */
+    public long start() {
+        inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * Mark a call as succeeded and return its latency in milliseconds
+     */
+    public long succeeded(long startNanos) {
+        return complete(startNanos, false);
+    }
+
+    public long failed(long startNanos) {
+        return complete(startNanos, true);
+    }
+
+    /**
+     * Calls abandoned by the caller (lost hedges, fan-out cut-offs) are not the agent's latency or fault
+     */
+    public void cancelled(long startNanos) {
+        inFlight.decrementAndGet();
+        cancellations.increment();
+    }
+
+    private long complete(long startNanos, boolean failed) {
+        long elapsed = System.nanoTime() - startNanos;
+        inFlight.decrementAndGet();
+        (failed ? failures : successes).increment();
+        window.record(elapsed, failed);
+        lastCompletedMillis = System.currentTimeMillis();
+        return elapsed / 1_000_000;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getSuccesses() {
+        return successes.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getCancellations() {
+        return cancellations.sum();
+    }
+
+    /**
+     * Wall-clock time of the last completed call, or 0 if none
+     */
+    public long getLastCompletedMillis() {
+        return lastCompletedMillis;
+    }
+
+    public Duration getWindow() {
+        return window.getWindow();
+    }
+
+    public RollingLatencyHistogram.Snapshot snapshot() {
+        return window.snapshot();
+    }
+}
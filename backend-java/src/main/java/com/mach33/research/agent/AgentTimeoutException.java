@@ -0,0 +1,13 @@
+package com.mach33.research.agent;
+
+/**
+ * Thrown when no agent produced a usable answer before the request deadline
+ */
+public class AgentTimeoutException extends RuntimeException {
+    
+    private static final long serialVersionUID = 1L;
+    
+    public AgentTimeoutException(String message) {
+        super(message);
+    }
+}
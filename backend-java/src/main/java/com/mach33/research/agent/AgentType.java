@@ -0,0 +1,25 @@
+package com.mach33.research.agent;
+
+/**
+ * Agent types a chat message can be addressed to
+ */
+public enum AgentType {
+    CLAUDE,
+    CHATGPT,
+    GROK,
+    AUTO;
+    
+    /**
+     * Parse a client-supplied agent type; null means CLAUDE
+     */
+    public static AgentType parse(String value) {
+        if (value == null) {
+            return CLAUDE;
+        }
+        try {
+            return valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown agent type: " + value);
+        }
+    }
+}
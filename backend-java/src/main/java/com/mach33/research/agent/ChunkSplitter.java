@@ -0,0 +1,34 @@
+package com.mach33.research.agent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits text into the token-sized chunks that are streamed to clients
+ */
+public final class ChunkSplitter {
+    
+    private ChunkSplitter() {
+    }
+    
+    /**
+     * Split text into whitespace-delimited chunks, each carrying its trailing whitespace
+     */
+    public static List<String> split(String text) {
+        List<String> chunks = new ArrayList<>();
+        int start = 0;
+        int length = text.length();
+        while (start < length) {
+            int end = start;
+            while (end < length && !Character.isWhitespace(text.charAt(end))) {
+                end++;
+            }
+            while (end < length && Character.isWhitespace(text.charAt(end))) {
+                end++;
+            }
+            chunks.add(text.substring(start, end));
+            start = end;
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,28 @@
+package com.mach33.research.config;
+
+import com.mach33.research.agent.AgentProvider;
+import com.mach33.research.agent.SimulatedAgentProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registers one provider per agent type. Replace a bean with a remote client to use a real model.
+ */
+@Configuration
+public class AgentConfig {
+
+    @Bean
+    public AgentProvider claudeAgent(ChatProperties properties) {
+        return new SimulatedAgentProvider("CLAUDE", "Claude-3.5-Sonnet", properties.getSimulated());
+    }
+
+    @Bean
+    public AgentProvider chatGptAgent(ChatProperties properties) {
+        return new SimulatedAgentProvider("CHATGPT", "GPT-4", properties.getSimulated());
+    }
+
+    @Bean
+    public AgentProvider grokAgent(ChatProperties properties) {
+        return new SimulatedAgentProvider("GROK", "Grok-2", properties.getSimulated());
+    }
+}
@@ -0,0 +1,188 @@
+package com.mach33.research.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Chat and agent settings bound from research.chat.* in application.yml
+ */
+@Component
+@ConfigurationProperties(prefix = "research.chat")
+public class ChatProperties {
+    
+    private final Auto auto = new Auto();
+    private final Simulated simulated = new Simulated();
+    private final Cache cache = new Cache();
+    private final Retention retention = new Retention();
+    private final Metrics metrics = new Metrics();
+    private final Bulkheads bulkheads = new Bulkheads();
+    private final Dedupe dedupe = new Dedupe();
+    
+    public Auto getAuto() {
+        return auto;
+    }
+    
+    public Simulated getSimulated() {
+        return simulated;
+    }
+    
+    public Cache getCache() {
+        return cache;
+    }
+    
+    public Retention getRetention() {
+        return retention;
+    }
+    
+    public Metrics getMetrics() {
+        return metrics;
+    }
+    
+    public Bulkheads getBulkheads() {
+        return bulkheads;
+    }
+    
+    public Dedupe getDedupe() {
+        return dedupe;
+    }
+    
+    /**
+     * Fan-out behaviour for agentType=AUTO
+     */
+    public static class Auto {
+        private String mode = "FIRST";
+        private Duration deadline = Duration.ofSeconds(8);
+        private Duration hedgeDelay = Duration.ofMillis(1500);
+        private int maxAttempts = 2;
+        
+        public String getMode() { return mode; }
+        public void setMode(String mode) { this.mode = mode; }
+        public Duration getDeadline() { return deadline; }
+        public void setDeadline(Duration deadline) { this.deadline = deadline; }
+        public Duration getHedgeDelay() { return hedgeDelay; }
+        public void setHedgeDelay(Duration hedgeDelay) { this.hedgeDelay = hedgeDelay; }
+        public int getMaxAttempts() { return maxAttempts; }
+        public void setMaxAttempts(int maxAttempts) { this.maxAttempts = maxAttempts; }
+    }
+    
+    /**
+     * Behaviour of the local simulated agent providers
+     */
+    public static class Simulated {
+        private Duration baseLatency = Duration.ZERO;
+        private Duration jitter = Duration.ZERO;
+        private Duration tokenDelay = Duration.ZERO;
+        private double failureRate = 0.0;
+        
+        public Duration getBaseLatency() { return baseLatency; }
+        public void setBaseLatency(Duration baseLatency) { this.baseLatency = baseLatency; }
+        public Duration getJitter() { return jitter; }
+        public void setJitter(Duration jitter) { this.jitter = jitter; }
+        public Duration getTokenDelay() { return tokenDelay; }
+        public void setTokenDelay(Duration tokenDelay) { this.tokenDelay = tokenDelay; }
+        public double getFailureRate() { return failureRate; }
+        public void setFailureRate(double failureRate) { this.failureRate = failureRate; }
+    }
+    
+    /**
+     * Response cache keyed by agent type and normalized prompt
+     */
+    public static class Cache {
+        private boolean enabled = true;
+        private int maxEntries = 10_000;
+        private Duration ttl = Duration.ofMinutes(10);
+        
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public int getMaxEntries() { return maxEntries; }
+        public void setMaxEntries(int maxEntries) { this.maxEntries = maxEntries; }
+        public Duration getTtl() { return ttl; }
+        public void setTtl(Duration ttl) { this.ttl = ttl; }
+    }
+    
+    /**
+     * Chat history retention: heap budget, where older messages are spilled, and how much spilled history is kept
+     */
+    public static class Retention {
+        private DataSize heapBudget = DataSize.ofMegabytes(256);
+        private DataSize hotTailBytes = DataSize.ofKilobytes(16);
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+        private DataSize diskBudget = DataSize.ofGigabytes(4);
+        private String spillDir = System.getProperty("java.io.tmpdir") + "/research-chat-spill";
+        
+        public DataSize getHeapBudget() { return heapBudget; }
+        public void setHeapBudget(DataSize heapBudget) { this.heapBudget = heapBudget; }
+        public DataSize getHotTailBytes() { return hotTailBytes; }
+        public void setHotTailBytes(DataSize hotTailBytes) { this.hotTailBytes = hotTailBytes; }
+        public DataSize getSegmentSize() { return segmentSize; }
+        public void setSegmentSize(DataSize segmentSize) { this.segmentSize = segmentSize; }
+        public DataSize getDiskBudget() { return diskBudget; }
+        public void setDiskBudget(DataSize diskBudget) { this.diskBudget = diskBudget; }
+        public String getSpillDir() { return spillDir; }
+        public void setSpillDir(String spillDir) { this.spillDir = spillDir; }
+    }
+    
+    /**
+     * Rolling window for per-agent latency and error statistics
+     */
+    public static class Metrics {
+        private Duration window = Duration.ofSeconds(60);
+        private int slices = 12;
+        
+        public Duration getWindow() { return window; }
+        public void setWindow(Duration window) { this.window = window; }
+        public int getSlices() { return slices; }
+        public void setSlices(int slices) { this.slices = slices; }
+    }
+    
+    /**
+     * Per-agent concurrency limits; an entry under agents replaces the defaults for that agent type
+     */
+    public static class Bulkheads {
+        private final Limits defaults = new Limits();
+        private final Map<String, Limits> agents = new LinkedHashMap<>();
+        
+        public Limits getDefaults() { return defaults; }
+        public Map<String, Limits> getAgents() { return agents; }
+        
+        public Limits forAgent(String agentType) {
+            for (Map.Entry<String, Limits> entry : agents.entrySet()) {
+                if (entry.getKey().equalsIgnoreCase(agentType)) {
+                    return entry.getValue();
+                }
+            }
+            return defaults;
+        }
+    }
+    
+    public static class Limits {
+        private int maxConcurrent = 16;
+        private int maxWaiting = 32;
+        private Duration maxWait = Duration.ofSeconds(2);
+        
+        public int getMaxConcurrent() { return maxConcurrent; }
+        public void setMaxConcurrent(int maxConcurrent) { this.maxConcurrent = maxConcurrent; }
+        public int getMaxWaiting() { return maxWaiting; }
+        public void setMaxWaiting(int maxWaiting) { this.maxWaiting = maxWaiting; }
+        public Duration getMaxWait() { return maxWait; }
+        public void setMaxWait(Duration maxWait) { this.maxWait = maxWait; }
+    }
+    
+    /**
+     * Coalescing of identical concurrent messages (same session, agent and content)
+     */
+    public static class Dedupe {
+        private boolean enabled = true;
+        private Duration window = Duration.ofSeconds(2);
+        
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public Duration getWindow() { return window; }
+        public void setWindow(Duration window) { this.window = window; }
+    }
+}
@@ -19,6 +19,7 @@ public class CorsConfig implements WebMvcConfigurer {
                 .allowedOriginPatterns("*")
                 .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS", "HEAD", "PATCH")
                 .allowedHeaders("*")
+                .exposedHeaders("Retry-After", "X-Next-Cursor", "X-Search-Truncated")
                 .allowCredentials(false)
                 .maxAge(3600);
     }
@@ -41,7 +42,10 @@ public class CorsConfig implements WebMvcConfigurer {
             "Access-Control-Allow-Origin",
             "Access-Control-Allow-Credentials",
             "Access-Control-Allow-Methods",
-            "Access-Control-Allow-Headers"
+            "Access-Control-Allow-Headers",
+            "Retry-After",
+            "X-Next-Cursor",
+            "X-Search-Truncated"
         ));
         
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
@@ -0,0 +1,34 @@
+package com.mach33.research.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Evidence settings bound from research.evidence.* in application.yml
+ */
+@Component
+@ConfigurationProperties(prefix = "research.evidence")
+public class EvidenceProperties {
+
+    private final Duplicates duplicates = new Duplicates();
+
+    public Duplicates getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Near-duplicate detection when evidence is created or imported
+     */
+    public static class Duplicates {
+        private boolean enabled = true;
+        private String mode = "FLAG";
+        private double threshold = 0.8;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public String getMode() { return mode; }
+        public void setMode(String mode) { this.mode = mode; }
+        public double getThreshold() { return threshold; }
+        public void setThreshold(double threshold) { this.threshold = threshold; }
+    }
+}
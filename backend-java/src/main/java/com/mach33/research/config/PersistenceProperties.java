@@ -0,0 +1,34 @@
+package com.mach33.research.config;
+
+import com.mach33.research.util.WriteAheadLog;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Write-ahead log settings bound from research.persistence.* in application.yml.
+ * State is only persisted when a directory is configured.
+ */
+@Component
+@ConfigurationProperties(prefix = "research.persistence")
+public class PersistenceProperties {
+
+    private String dir = "";
+    private WriteAheadLog.Durability durability = WriteAheadLog.Durability.GROUP;
+    private Duration commitWindow = Duration.ofMillis(2);
+    private int maxBatch = 512;
+    private Duration snapshotInterval = Duration.ofMinutes(15);
+
+    public boolean isEnabled() { return dir != null && !dir.isBlank(); }
+    public String getDir() { return dir; }
+    public void setDir(String dir) { this.dir = dir; }
+    public WriteAheadLog.Durability getDurability() { return durability; }
+    public void setDurability(WriteAheadLog.Durability durability) { this.durability = durability; }
+    public Duration getCommitWindow() { return commitWindow; }
+    public void setCommitWindow(Duration commitWindow) { this.commitWindow = commitWindow; }
+    public int getMaxBatch() { return maxBatch; }
+    public void setMaxBatch(int maxBatch) { this.maxBatch = maxBatch; }
+    public Duration getSnapshotInterval() { return snapshotInterval; }
+    public void setSnapshotInterval(Duration snapshotInterval) { this.snapshotInterval = snapshotInterval; }
+}
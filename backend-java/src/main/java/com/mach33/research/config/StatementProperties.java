@@ -0,0 +1,60 @@
+package com.mach33.research.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Research statement settings bound from research.statements.* in application.yml
+ */
+@Component
+@ConfigurationProperties(prefix = "research.statements")
+public class StatementProperties {
+
+    private final Subquestions subquestions = new Subquestions();
+    private String adminToken = "";
+
+    public Subquestions getSubquestions() {
+        return subquestions;
+    }
+
+    /**
+     * Token required in X-Admin-Token for cross-session endpoints; blank disables them
+     */
+    public String getAdminToken() {
+        return adminToken;
+    }
+
+    public void setAdminToken(String adminToken) {
+        this.adminToken = adminToken;
+    }
+
+    /**
+     * Asynchronous subquestion generation jobs
+     */
+    public static class Subquestions {
+        private int workers = 4;
+        private int queueCapacity = 32;
+        private int cacheMaxEntries = 1000;
+        private Duration cacheTtl = Duration.ofMinutes(30);
+        private int maxJobs = 10000;
+        private Duration jobRetention = Duration.ofMinutes(10);
+        private Duration simulatedLatency = Duration.ZERO;
+
+        public int getWorkers() { return workers; }
+        public void setWorkers(int workers) { this.workers = workers; }
+        public int getQueueCapacity() { return queueCapacity; }
+        public void setQueueCapacity(int queueCapacity) { this.queueCapacity = queueCapacity; }
+        public int getCacheMaxEntries() { return cacheMaxEntries; }
+        public void setCacheMaxEntries(int cacheMaxEntries) { this.cacheMaxEntries = cacheMaxEntries; }
+        public Duration getCacheTtl() { return cacheTtl; }
+        public void setCacheTtl(Duration cacheTtl) { this.cacheTtl = cacheTtl; }
+        public int getMaxJobs() { return maxJobs; }
+        public void setMaxJobs(int maxJobs) { this.maxJobs = maxJobs; }
+        public Duration getJobRetention() { return jobRetention; }
+        public void setJobRetention(Duration jobRetention) { this.jobRetention = jobRetention; }
+        public Duration getSimulatedLatency() { return simulatedLatency; }
+        public void setSimulatedLatency(Duration simulatedLatency) { this.simulatedLatency = simulatedLatency; }
+    }
+}
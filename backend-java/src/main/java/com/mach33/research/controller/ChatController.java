@@ -1,18 +1,30 @@
 package com.mach33.research.controller;
 
+import com.mach33.research.agent.AgentBusyException;
+import com.mach33.research.agent.AgentTimeoutException;
 import com.mach33.research.service.InMemoryChatService;
+import com.mach33.research.service.InMemoryChatService.ChatMessageDto;
+import com.mach33.research.service.StoredChatMessage;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.CompletionException;
 
 @RestController
 @RequestMapping("/api/chat")
 @CrossOrigin(origins = "*")
 public class ChatController {
     
+    private static final long STREAM_TIMEOUT_MS = 120_000;
+    
     private final InMemoryChatService chatService;
     
     public ChatController(InMemoryChatService chatService) {
@@ -23,27 +35,94 @@ public class ChatController {
      * Send a message to AI agents
      */
     @PostMapping("/message")
-    public ResponseEntity<InMemoryChatService.ChatMessageDto> sendMessage(@RequestBody SendMessageRequest request) {
+    public ResponseEntity<ChatMessageDto> sendMessage(@RequestBody SendMessageRequest request) {
         try {
-            InMemoryChatService.ChatMessageDto message = chatService.sendMessage(
+            StoredChatMessage message = chatService.sendMessage(
                 request.content,
                 request.sessionId,
-                request.agentType
+                request.agentType,
+                request.toOptions()
             );
-            return ResponseEntity.ok(message);
+            return ResponseEntity.ok(ChatMessageDto.from(message, request.sessionId));
+        } catch (AgentBusyException e) {
+            return ResponseEntity.status(busyStatus(e))
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .build();
+        } catch (AgentTimeoutException e) {
+            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).build();
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    /**
+     * Send a message and stream the agent response as server-sent events.
+     * Emits a "start" event, one "chunk" event per generated fragment, then "done" with the stored message.
+     */
+    @PostMapping(value = "/message/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamMessage(@RequestBody SendMessageRequest request) {
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        try {
+            sendEvent(emitter, "start", Map.of("agentType", request.agentType != null ? request.agentType.toUpperCase() : "CLAUDE"));
+            chatService.streamMessage(
+                request.content,
+                request.sessionId,
+                request.agentType,
+                request.toOptions(),
+                chunk -> sendEvent(emitter, "chunk", Map.of("delta", chunk))
+            ).whenComplete((message, error) -> {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                if (cause instanceof AgentBusyException busy) {
+                    sendEvent(emitter, "error", Map.of("error", String.valueOf(busy.getMessage()),
+                            "status", busyStatus(busy).value(), "retryAfter", busy.getRetryAfterSeconds()));
+                } else if (cause != null) {
+                    sendEvent(emitter, "error", Map.of("error", String.valueOf(cause.getMessage())));
+                } else {
+                    sendEvent(emitter, "done", ChatMessageDto.from(message, request.sessionId));
+                }
+                emitter.complete();
+            });
+            return ResponseEntity.ok(emitter);
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
         }
     }
     
     /**
-     * Get chat history for a session
+     * A full wait queue means back off now (429); a timed-out wait means the agent is overloaded (503)
+     */
+    private static HttpStatus busyStatus(AgentBusyException e) {
+        return e.getReason() == AgentBusyException.Reason.QUEUE_FULL
+                ? HttpStatus.TOO_MANY_REQUESTS
+                : HttpStatus.SERVICE_UNAVAILABLE;
+    }
+    
+    /**
+     * Send one SSE event, ignoring clients that have already disconnected
+     */
+    private void sendEvent(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            // Client went away; generation continues so the finished message is still stored
+        }
+    }
+    
+    /**
+     * Get chat history for a session.
+     * Pass after and/or limit to page through the history by message id instead of fetching all of it.
      */
     @GetMapping("/session/{sessionId}")
-    public ResponseEntity<List<InMemoryChatService.ChatMessageDto>> getChatHistory(@PathVariable String sessionId) {
+    public ResponseEntity<List<ChatMessageDto>> getChatHistory(
+            @PathVariable String sessionId,
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit) {
         try {
-            List<InMemoryChatService.ChatMessageDto> messages = chatService.getChatHistory(sessionId);
-            return ResponseEntity.ok(messages);
+            List<StoredChatMessage> messages = (after == null && limit == null)
+                    ? chatService.getChatHistory(sessionId)
+                    : chatService.getChatHistoryPage(sessionId, after,
+                            limit != null ? limit : InMemoryChatService.DEFAULT_PAGE_SIZE);
+            return ResponseEntity.ok(ChatMessageDto.from(messages, sessionId));
         } catch (Exception e) {
             System.err.println("ERROR in getChatHistory: " + e.getMessage());
             e.printStackTrace();
@@ -65,8 +144,12 @@ public class ChatController {
      */
     @GetMapping("/agents/{agentType}/status")
     public ResponseEntity<Map<String, Object>> getAgentStatus(@PathVariable String agentType) {
-        Map<String, Object> status = chatService.getAgentStatus(agentType);
-        return ResponseEntity.ok(status);
+        try {
+            Map<String, Object> status = chatService.getAgentStatus(agentType);
+            return ResponseEntity.ok(status);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
     }
     
     /**
@@ -100,5 +183,16 @@ public class ChatController {
         public String content;
         public String sessionId;
         public String agentType; // CLAUDE, CHATGPT, GROK, AUTO
+        public String autoMode; // FIRST, ENSEMBLE
+        public Long deadlineMs;
+        public boolean bypassCache;
+        
+        InMemoryChatService.SendOptions toOptions() {
+            InMemoryChatService.SendOptions options = new InMemoryChatService.SendOptions();
+            options.autoMode = autoMode;
+            options.deadlineMs = deadlineMs;
+            options.bypassCache = bypassCache;
+            return options;
+        }
     }
 } 
\ No newline at end of file
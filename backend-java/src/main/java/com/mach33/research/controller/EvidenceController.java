@@ -1,9 +1,23 @@
 package com.mach33.research.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mach33.research.service.InMemoryEvidenceService;
+import com.mach33.research.service.ScoringRules;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
@@ -13,10 +27,16 @@ import java.util.HashMap;
 @CrossOrigin(origins = "*")
 public class EvidenceController {
     
+    private static final String NDJSON = "application/x-ndjson";
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final String SEARCH_TRUNCATED_HEADER = "X-Search-Truncated";
+    
     private final InMemoryEvidenceService evidenceService;
+    private final ObjectMapper objectMapper;
     
-    public EvidenceController(InMemoryEvidenceService evidenceService) {
+    public EvidenceController(InMemoryEvidenceService evidenceService, ObjectMapper objectMapper) {
         this.evidenceService = evidenceService;
+        this.objectMapper = objectMapper;
     }
     
     /**
@@ -28,15 +48,44 @@ public class EvidenceController {
             InMemoryEvidenceService.EvidenceDto evidence = evidenceService.createEvidence(
                 request.content,
                 request.sessionId,
-                request.type.toUpperCase(),
+                request.type != null ? request.type.toUpperCase() : null,
                 request.source
             );
             return ResponseEntity.ok(evidence);
-        } catch (Exception e) {
+        } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().build();
         }
     }
     
+    /**
+     * Bulk import evidence from an NDJSON body, one CreateEvidenceRequest (plus optional tags) per line.
+     * Streams back NDJSON: one {line, id} or {line, error} per input line, then a final {summary}.
+     */
+    @PostMapping(value = "/bulk", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> importEvidence(HttpServletRequest request) throws IOException {
+        BufferedReader body = new BufferedReader(new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8));
+        StreamingResponseBody stream = out -> {
+            InMemoryEvidenceService.BulkImportSummary summary = evidenceService.importEvidence(body, results -> {
+                try {
+                    for (InMemoryEvidenceService.BulkLineResult result : results) {
+                        writeLine(out, result);
+                    }
+                    out.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writeLine(out, Map.of("summary", summary));
+            out.flush();
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(stream);
+    }
+    
+    private void writeLine(OutputStream out, Object value) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(value));
+        out.write('\n');
+    }
+    
     /**
      * Get all evidence for a session
      */
@@ -57,25 +106,71 @@ public class EvidenceController {
     }
     
     /**
-     * Get evidence by type for a session
+     * Get evidence by type for a session, most reliable first.
+     * Pass limit to page; follow X-Next-Cursor with cursor for the next page.
      */
     @GetMapping("/session/{sessionId}/type/{type}")
     public ResponseEntity<List<InMemoryEvidenceService.EvidenceDto>> getEvidenceByType(
             @PathVariable String sessionId, 
-            @PathVariable String type) {
-        List<InMemoryEvidenceService.EvidenceDto> evidence = evidenceService.getEvidenceByType(sessionId, type.toUpperCase());
-        return ResponseEntity.ok(evidence);
+            @PathVariable String type,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor) {
+        try {
+            return pageResponse(evidenceService.getEvidenceByType(sessionId, type.toUpperCase(), limit, cursor));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
     
     /**
-     * Get evidence linked to a specific claim
+     * Get evidence linked to a specific claim, most reliable first; pages like the by-type endpoint
      */
     @GetMapping("/session/{sessionId}/claim/{claimId}")
     public ResponseEntity<List<InMemoryEvidenceService.EvidenceDto>> getEvidenceForClaim(
+            @PathVariable String sessionId,
+            @PathVariable Long claimId,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor) {
+        try {
+            return pageResponse(evidenceService.getEvidenceForClaim(sessionId, claimId, limit, cursor));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    /**
+     * Page items as the body; the cursor for the next page, if any, in the X-Next-Cursor header
+     */
+    private ResponseEntity<List<InMemoryEvidenceService.EvidenceDto>> pageResponse(InMemoryEvidenceService.EvidencePage page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextCursor != null) {
+            response.header(NEXT_CURSOR_HEADER, page.nextCursor);
+        }
+        return response.body(page.items);
+    }
+    
+    /**
+     * Get link counts and summed strength per link type for a claim
+     */
+    @GetMapping("/session/{sessionId}/claim/{claimId}/support")
+    public ResponseEntity<InMemoryEvidenceService.ClaimSupport> getClaimSupport(
             @PathVariable String sessionId,
             @PathVariable Long claimId) {
-        List<InMemoryEvidenceService.EvidenceDto> evidence = evidenceService.getEvidenceForClaim(sessionId, claimId);
-        return ResponseEntity.ok(evidence);
+        return ResponseEntity.ok(evidenceService.getClaimSupport(sessionId, claimId));
+    }
+    
+    /**
+     * Get claim support for several claims at once, e.g. every claim on screen
+     */
+    @GetMapping("/session/{sessionId}/claims/support")
+    public ResponseEntity<List<InMemoryEvidenceService.ClaimSupport>> getClaimSupport(
+            @PathVariable String sessionId,
+            @RequestParam List<Long> ids) {
+        List<InMemoryEvidenceService.ClaimSupport> support = new ArrayList<>(ids.size());
+        for (Long claimId : ids) {
+            support.add(evidenceService.getClaimSupport(sessionId, claimId));
+        }
+        return ResponseEntity.ok(support);
     }
     
     /**
@@ -89,9 +184,11 @@ public class EvidenceController {
             InMemoryEvidenceService.EvidenceDto evidence = evidenceService.linkToClaim(
                 evidenceId,
                 request.claimId,
-                request.linkType.toUpperCase()
+                request.linkType
             );
             return ResponseEntity.ok(evidence);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         } catch (RuntimeException e) {
             return ResponseEntity.notFound().build();
         }
@@ -141,14 +238,106 @@ public class EvidenceController {
     }
     
     /**
-     * Search evidence by content
+     * Extract potential evidence from a raw text body of any size.
+     * Streams back NDJSON: one {start, end, text} per matching sentence in document order, then a final {summary}.
+     */
+    @PostMapping(value = "/extract/stream", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> extractEvidenceStream(HttpServletRequest request) throws IOException {
+        Charset charset = request.getCharacterEncoding() != null
+                ? Charset.forName(request.getCharacterEncoding())
+                : StandardCharsets.UTF_8;
+        Reader body = new InputStreamReader(request.getInputStream(), charset);
+        StreamingResponseBody stream = out -> {
+            InMemoryEvidenceService.ExtractionSummary summary = evidenceService.extractEvidence(body, matches -> {
+                try {
+                    for (InMemoryEvidenceService.ExtractedSentence match : matches) {
+                        writeLine(out, match);
+                    }
+                    out.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writeLine(out, Map.of("summary", summary));
+            out.flush();
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(stream);
+    }
+    
+    /**
+     * Search evidence by content, source and tags, best matches first.
+     * X-Search-Truncated: true means the last word was too short a prefix to search every completion;
+     * type more of it for complete results.
      */
     @GetMapping("/session/{sessionId}/search")
     public ResponseEntity<List<InMemoryEvidenceService.EvidenceDto>> searchEvidence(
             @PathVariable String sessionId,
-            @RequestParam String q) {
-        List<InMemoryEvidenceService.EvidenceDto> evidence = evidenceService.searchEvidence(sessionId, q);
-        return ResponseEntity.ok(evidence);
+            @RequestParam String q,
+            @RequestParam(defaultValue = "" + InMemoryEvidenceService.DEFAULT_SEARCH_LIMIT) int limit) {
+        InMemoryEvidenceService.SearchResults results = evidenceService.searchEvidence(sessionId, q, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (results.truncated) {
+            response.header(SEARCH_TRUNCATED_HEADER, "true");
+        }
+        return response.body(results.items);
+    }
+    
+    /**
+     * Get near-duplicate clusters for a session: each original item with the duplicates flagged or merged into it
+     */
+    @GetMapping("/session/{sessionId}/duplicates")
+    public ResponseEntity<List<InMemoryEvidenceService.DuplicateCluster>> getDuplicateClusters(@PathVariable String sessionId) {
+        return ResponseEntity.ok(evidenceService.getDuplicateClusters(sessionId));
+    }
+    
+    /**
+     * Get the current reliability scoring rules
+     */
+    @GetMapping("/scoring/rules")
+    public ResponseEntity<ScoringRules> getScoringRules() {
+        return ResponseEntity.ok(evidenceService.getScoringRules());
+    }
+    
+    /**
+     * Get every installed version of the scoring rules, oldest first
+     */
+    @GetMapping("/scoring/rules/history")
+    public ResponseEntity<List<ScoringRules>> getScoringHistory() {
+        return ResponseEntity.ok(evidenceService.getScoringHistory());
+    }
+    
+    /**
+     * Install tuned scoring rules as a new version and, unless rescore=false, start rescoring existing evidence
+     */
+    @PutMapping("/scoring/rules")
+    public ResponseEntity<ScoringRules> installScoringRules(
+            @RequestBody ScoringRules rules,
+            @RequestParam(defaultValue = "true") boolean rescore) {
+        try {
+            ScoringRules installed = evidenceService.installScoringRules(rules);
+            if (rescore) {
+                evidenceService.startRescoring();
+            }
+            return ResponseEntity.ok(installed);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    /**
+     * Rescore all evidence with the current rules in the background; evidence with a manual reliability is kept
+     */
+    @PostMapping("/scoring/rescore")
+    public ResponseEntity<InMemoryEvidenceService.RescoreStatus> startRescoring() {
+        return ResponseEntity.accepted().body(evidenceService.startRescoring());
+    }
+    
+    /**
+     * Get progress and throughput of the latest rescoring job
+     */
+    @GetMapping("/scoring/rescore")
+    public ResponseEntity<InMemoryEvidenceService.RescoreStatus> getRescoreStatus() {
+        return ResponseEntity.ok(evidenceService.getRescoreStatus());
     }
     
     /**
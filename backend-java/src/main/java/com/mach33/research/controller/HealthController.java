@@ -1,5 +1,6 @@
 package com.mach33.research.controller;
 
+import com.mach33.research.service.StateJournal;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -13,6 +14,12 @@ import java.util.Map;
 @RequestMapping("/api/health")
 public class HealthController {
     
+    private final StateJournal stateJournal;
+    
+    public HealthController(StateJournal stateJournal) {
+        this.stateJournal = stateJournal;
+    }
+    
     @GetMapping
     public ResponseEntity<Map<String, Object>> health() {
         Map<String, Object> response = new HashMap<>();
@@ -25,4 +32,12 @@ public class HealthController {
         
         return ResponseEntity.ok(response);
     }
-} 
\ No newline at end of file
+    
+    /**
+     * Write-ahead log state: replay on startup, write throughput and commit latency
+     */
+    @GetMapping("/persistence")
+    public ResponseEntity<StateJournal.JournalStatus> persistence() {
+        return ResponseEntity.ok(stateJournal.getStatus());
+    }
+}
@@ -1,9 +1,16 @@
 package com.mach33.research.controller;
 
+import com.mach33.research.config.StatementProperties;
 import com.mach33.research.service.InMemoryResearchStatementService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
@@ -13,10 +20,15 @@ import java.util.HashMap;
 @CrossOrigin(origins = "*")
 public class ResearchStatementController {
     
+    private static final long JOB_EVENTS_TIMEOUT_MS = 5 * 60 * 1000L;
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    
     private final InMemoryResearchStatementService researchStatementService;
+    private final StatementProperties properties;
     
-    public ResearchStatementController(InMemoryResearchStatementService researchStatementService) {
+    public ResearchStatementController(InMemoryResearchStatementService researchStatementService, StatementProperties properties) {
         this.researchStatementService = researchStatementService;
+        this.properties = properties;
     }
     
     /**
@@ -99,6 +111,47 @@ public class ResearchStatementController {
         }
     }
     
+    /**
+     * List the versions of a statement, oldest first
+     */
+    @GetMapping("/{statementId}/versions")
+    public ResponseEntity<List<InMemoryResearchStatementService.VersionSummary>> getVersions(@PathVariable Long statementId) {
+        try {
+            return ResponseEntity.ok(researchStatementService.getVersions(statementId));
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+    
+    /**
+     * Get one version of a statement; version 1 is the original
+     */
+    @GetMapping("/{statementId}/versions/{version}")
+    public ResponseEntity<InMemoryResearchStatementService.StatementVersion> getVersion(
+            @PathVariable Long statementId,
+            @PathVariable int version) {
+        try {
+            return ResponseEntity.ok(researchStatementService.getVersion(statementId, version));
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+    
+    /**
+     * Diff two versions of a statement word by word
+     */
+    @GetMapping("/{statementId}/diff")
+    public ResponseEntity<InMemoryResearchStatementService.StatementDiff> diffVersions(
+            @PathVariable Long statementId,
+            @RequestParam int from,
+            @RequestParam int to) {
+        try {
+            return ResponseEntity.ok(researchStatementService.diffVersions(statementId, from, to));
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+    
     /**
      * Add subquestions to a statement
      */
@@ -123,6 +176,51 @@ public class ResearchStatementController {
         return ResponseEntity.ok(subquestions);
     }
     
+    /**
+     * Start generating subquestions in the background; returns the job to poll or subscribe to
+     */
+    @PostMapping("/subquestion-jobs")
+    public ResponseEntity<InMemoryResearchStatementService.SubquestionJob> submitSubquestionJob(
+            @RequestBody GenerateSubquestionsRequest request) {
+        try {
+            InMemoryResearchStatementService.SubquestionJob job = researchStatementService.submitSubquestionJob(request.researchStatement);
+            return ResponseEntity.accepted().body(job);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    /**
+     * Poll a subquestion job
+     */
+    @GetMapping("/subquestion-jobs/{jobId}")
+    public ResponseEntity<InMemoryResearchStatementService.SubquestionJob> getSubquestionJob(@PathVariable String jobId) {
+        return researchStatementService.getSubquestionJob(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+    
+    /**
+     * Subscribe to a subquestion job as server-sent events: one "done" event with the finished job
+     */
+    @GetMapping(value = "/subquestion-jobs/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> subquestionJobEvents(@PathVariable String jobId) {
+        return researchStatementService.getSubquestionJob(jobId)
+                .map(job -> {
+                    SseEmitter emitter = new SseEmitter(JOB_EVENTS_TIMEOUT_MS);
+                    researchStatementService.subquestionJobDone(job).thenAccept(finished -> {
+                        try {
+                            emitter.send(SseEmitter.event().name("done").data(finished, MediaType.APPLICATION_JSON));
+                            emitter.complete();
+                        } catch (IOException | IllegalStateException e) {
+                            // Client went away; the result stays available for polling
+                        }
+                    });
+                    return ResponseEntity.ok(emitter);
+                })
+                .orElse(ResponseEntity.notFound().build());
+    }
+    
     /**
      * Update statement status
      */
@@ -139,14 +237,57 @@ public class ResearchStatementController {
     }
     
     /**
-     * Search statements by content
+     * Search statements by content, best matches first.
+     * Pass limit to page; follow X-Next-Cursor with cursor for the next page.
      */
     @GetMapping("/session/{sessionId}/search")
     public ResponseEntity<List<InMemoryResearchStatementService.ResearchStatementDto>> searchStatements(
             @PathVariable String sessionId,
-            @RequestParam String q) {
-        List<InMemoryResearchStatementService.ResearchStatementDto> statements = researchStatementService.searchStatements(sessionId, q);
-        return ResponseEntity.ok(statements);
+            @RequestParam String q,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor) {
+        try {
+            return pageResponse(researchStatementService.searchStatements(sessionId, q, limit, cursor));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    /**
+     * Search statements across all sessions (at least three characters); pages like the session search.
+     * Needs the configured admin token in X-Admin-Token; without one configured the endpoint is not found.
+     */
+    @GetMapping("/admin/search")
+    public ResponseEntity<List<InMemoryResearchStatementService.ResearchStatementDto>> searchAllStatements(
+            @RequestHeader(value = "X-Admin-Token", required = false) String adminToken,
+            @RequestParam String q,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor) {
+        String expected = properties.getAdminToken();
+        if (expected == null || expected.isBlank()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (adminToken == null || !MessageDigest.isEqual(
+                expected.getBytes(StandardCharsets.UTF_8), adminToken.getBytes(StandardCharsets.UTF_8))) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        try {
+            return pageResponse(researchStatementService.searchAllStatements(q, limit, cursor));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    /**
+     * Page items as the body; the cursor for the next page, if any, in the X-Next-Cursor header
+     */
+    private ResponseEntity<List<InMemoryResearchStatementService.ResearchStatementDto>> pageResponse(
+            InMemoryResearchStatementService.StatementPage page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextCursor != null) {
+            response.header(NEXT_CURSOR_HEADER, page.nextCursor);
+        }
+        return response.body(page.items);
     }
     
     /**
@@ -0,0 +1,731 @@
+package com.mach33.research.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mach33.research.agent.AgentType;
+import com.mach33.research.config.ChatProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiPredicate;
+import java.util.function.LongFunction;
+
+/**
+ * Per-session, append-ordered chat history with a heap byte budget and a disk byte budget.
+ * Recent messages stay on heap; when the estimated heap footprint exceeds the heap budget,
+ * older messages of the least recently used sessions are written to on-disk segment
+ * files and read back transparently when history is requested. When spilled history exceeds
+ * the disk budget, the oldest spilled messages of the least recently used sessions are dropped,
+ * and segment files left mostly empty are compacted or deleted. Each drop is offered to a callback
+ * before it happens, so whoever keeps a durable copy of the history can drop the same messages.
+ */
+class ChatHistoryStore implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatHistoryStore.class);
+    private static final double LOW_WATER_MARK = 0.8;
+    private static final int INDEX_INTERVAL = 16;
+    private static final TypeReference<Map<String, Object>> EXTRAS_TYPE = new TypeReference<>() { };
+
+    private final Map<String, SessionLog> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong heapBytes = new AtomicLong();
+    private final AtomicLong spilledBytes = new AtomicLong();
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final Map<String, Long> droppedThrough = new ConcurrentHashMap<>(); // highest dropped id per session
+    private final BiPredicate<String, Long> beforeDrop;
+    private final long heapBudget;
+    private final long hotTailBytes;
+    private final long diskBudget;
+    private final SegmentFiles segments;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ExecutorService spillExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "chat-spill");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean spillScheduled = new AtomicBoolean();
+
+    /**
+     * beforeDrop is called with a session and the highest id about to be dropped from it, while that session
+     * is locked; if it returns false or throws, the history is kept for now
+     */
+    ChatHistoryStore(ChatProperties.Retention retention, BiPredicate<String, Long> beforeDrop) {
+        this.beforeDrop = beforeDrop;
+        this.heapBudget = retention.getHeapBudget().toBytes();
+        this.hotTailBytes = retention.getHotTailBytes().toBytes();
+        this.diskBudget = retention.getDiskBudget().toBytes();
+        this.segments = new SegmentFiles(Paths.get(retention.getSpillDir()), retention.getSegmentSize().toBytes());
+    }
+
+    /**
+     * Create a message with the next id and append it to its session, spilling in the background if over budget
+     */
+    StoredChatMessage append(String sessionId, AtomicLong idGenerator, LongFunction<StoredChatMessage> factory) {
+        StoredChatMessage message;
+        do {
+            message = sessions.computeIfAbsent(sessionId, SessionLog::new).append(idGenerator, factory);
+        } while (message == null);
+        if (heapBytes.addAndGet(message.estimatedBytes()) > heapBudget) {
+            scheduleSpill();
+        }
+        return message;
+    }
+
+    /**
+     * Append a message that already has its id, as when replaying stored history; ignored if it was dropped
+     */
+    void restore(String sessionId, StoredChatMessage message) {
+        if (!isRetained(sessionId, message.id)) {
+            return;
+        }
+        while (sessions.computeIfAbsent(sessionId, SessionLog::new).add(message) == null) {
+            // The session was dropped as empty just now; add to its replacement
+        }
+        if (heapBytes.addAndGet(message.estimatedBytes()) > heapBudget) {
+            scheduleSpill();
+        }
+    }
+
+    /**
+     * Full history of a session in append order
+     */
+    List<StoredChatMessage> history(String sessionId) {
+        return page(sessionId, 0L, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Up to limit messages of a session with ids greater than afterId, in append order.
+     * Spilled runs are read from the block containing afterId, and only as far as the page needs.
+     */
+    List<StoredChatMessage> page(String sessionId, long afterId, int limit) {
+        afterId = Math.max(afterId, droppedThrough.getOrDefault(sessionId, 0L));
+        SessionLog session = sessions.get(sessionId);
+        if (session == null) {
+            return new ArrayList<>();
+        }
+
+        List<SpilledRun> runs;
+        List<StoredChatMessage> hot;
+        synchronized (session) {
+            session.lastAccessNanos = System.nanoTime();
+            runs = new ArrayList<>(session.runs);
+            hot = session.hotAfter(afterId, limit);
+        }
+
+        List<StoredChatMessage> result = new ArrayList<>();
+        for (SpilledRun run : runs) {
+            if (result.size() >= limit) {
+                return result;
+            }
+            if (run.lastId <= afterId) {
+                continue;
+            }
+            for (StoredChatMessage message : readRun(run, afterId, limit - result.size())) {
+                if (message.id > afterId) {
+                    if (result.size() >= limit) {
+                        return result;
+                    }
+                    result.add(message);
+                }
+            }
+        }
+        for (StoredChatMessage message : hot) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(message);
+        }
+        return result;
+    }
+
+    /**
+     * Whether a message is still kept, rather than dropped over the disk budget; once false, always false
+     */
+    boolean isRetained(String sessionId, long id) {
+        return id > droppedThrough.getOrDefault(sessionId, 0L);
+    }
+
+    /**
+     * Drop a session's messages up to and including throughId, as when replaying a drop recorded earlier.
+     * They are hidden at once and discarded by the spill thread, which is the only one that removes messages.
+     */
+    void truncate(String sessionId, long throughId) {
+        droppedThrough.merge(sessionId, throughId, Math::max);
+        try {
+            spillExecutor.execute(() -> discardThrough(sessionId, throughId));
+        } catch (RejectedExecutionException e) {
+            // Closed; there is nothing left to reclaim
+        }
+    }
+
+    long getHeapBytes() {
+        return heapBytes.get();
+    }
+
+    /**
+     * Spilled history still referenced by a session
+     */
+    long getSpilledBytes() {
+        return spilledBytes.get();
+    }
+
+    /**
+     * Size of the segment files on disk, including space not yet reclaimed from dropped history
+     */
+    long getSegmentBytes() {
+        return segments.getFileBytes();
+    }
+
+    long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+
+    @Override
+    public void close() {
+        spillExecutor.shutdownNow();
+        segments.close();
+    }
+
+    private void scheduleSpill() {
+        if (spillScheduled.compareAndSet(false, true)) {
+            try {
+                spillExecutor.execute(() -> {
+                    try {
+                        enforceBudget();
+                        enforceDiskBudget();
+                    } finally {
+                        spillScheduled.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                spillScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Spill least recently used sessions until the heap footprint drops below the low-water mark.
+     * First pass keeps each session's hot tail; the second spills tails too if that was not enough.
+     */
+    private void enforceBudget() {
+        long target = (long) (heapBudget * LOW_WATER_MARK);
+        List<SessionLog> leastRecentFirst = leastRecentFirst();
+
+        for (long keepBytes : new long[] { hotTailBytes, 0L }) {
+            for (SessionLog session : leastRecentFirst) {
+                if (heapBytes.get() <= target) {
+                    return;
+                }
+                try {
+                    spill(session, keepBytes);
+                } catch (IOException e) {
+                    log.warn("Could not spill chat history for session {}; keeping it on heap", session.sessionId, e);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop the oldest spilled runs of the least recently used sessions until spilled history is below the
+     * low-water mark of the disk budget, then reclaim the segment space they held.
+     * A session left with no history at all is removed.
+     */
+    private void enforceDiskBudget() {
+        if (spilledBytes.get() <= diskBudget) {
+            return;
+        }
+        long target = (long) (diskBudget * LOW_WATER_MARK);
+        List<SessionLog> leastRecentFirst = leastRecentFirst();
+
+        for (SessionLog session : leastRecentFirst) {
+            if (spilledBytes.get() <= target || !dropSpilled(session, target)) {
+                break;
+            }
+        }
+        try {
+            segments.compact();
+        } catch (IOException e) {
+            log.warn("Could not compact chat spill segments", e);
+        }
+    }
+
+    /**
+     * Sessions by last access, oldest first. Sorted on one reading of each session's access time, since
+     * readers keep updating it and a sort whose keys change underneath it can fail.
+     */
+    private List<SessionLog> leastRecentFirst() {
+        List<AccessTime> accessTimes = new ArrayList<>(sessions.size());
+        for (SessionLog session : sessions.values()) {
+            accessTimes.add(new AccessTime(session, session.lastAccessNanos));
+        }
+        accessTimes.sort(Comparator.comparingLong(AccessTime::lastAccessNanos));
+        List<SessionLog> leastRecentFirst = new ArrayList<>(accessTimes.size());
+        for (AccessTime accessTime : accessTimes) {
+            leastRecentFirst.add(accessTime.session());
+        }
+        return leastRecentFirst;
+    }
+
+    private record AccessTime(SessionLog session, long lastAccessNanos) { }
+
+    /**
+     * Drop a session's oldest runs until spilled history is at the target; false if beforeDrop refused
+     */
+    private boolean dropSpilled(SessionLog session, long target) {
+        boolean allowed = true;
+        long dropped = 0;
+        while (spilledBytes.get() > target) {
+            SpilledRun oldest;
+            synchronized (session) {
+                if (session.runs.isEmpty()) {
+                    if (session.hot.isEmpty()) {
+                        session.removed = true;
+                        sessions.remove(session.sessionId, session);
+                    }
+                    break;
+                }
+                oldest = session.runs.get(0);
+                try {
+                    allowed = beforeDrop.test(session.sessionId, oldest.lastId);
+                } catch (RuntimeException e) {
+                    log.warn("Could not record dropping chat history of session {}; keeping it", session.sessionId, e);
+                    allowed = false;
+                }
+                if (!allowed) {
+                    break;
+                }
+                droppedThrough.merge(session.sessionId, oldest.lastId, Math::max);
+                session.runs.remove(0);
+            }
+            segments.release(oldest);
+            spilledBytes.addAndGet(-oldest.length);
+            dropped += oldest.count;
+        }
+        if (dropped > 0) {
+            droppedMessages.addAndGet(dropped);
+            log.debug("Dropped {} spilled chat messages of session {} over the disk budget", dropped, session.sessionId);
+        }
+        return allowed;
+    }
+
+    /**
+     * Remove a session's messages up to and including throughId and reclaim the space they held.
+     * Runs on the spill thread, so a spill in progress never sees its hot prefix change.
+     */
+    private void discardThrough(String sessionId, long throughId) {
+        SessionLog session = sessions.get(sessionId);
+        if (session == null) {
+            return;
+        }
+        List<SpilledRun> discarded = new ArrayList<>();
+        long discardedBytes = 0;
+        synchronized (session) {
+            while (!session.runs.isEmpty() && session.runs.get(0).lastId <= throughId) {
+                discarded.add(session.runs.remove(0));
+            }
+            int count = 0;
+            while (count < session.hot.size() && session.hot.get(count).id <= throughId) {
+                discardedBytes += session.hot.get(count).estimatedBytes();
+                count++;
+            }
+            session.hot.subList(0, count).clear();
+            session.hotBytes -= discardedBytes;
+            if (session.runs.isEmpty() && session.hot.isEmpty()) {
+                session.removed = true;
+                sessions.remove(sessionId, session);
+            }
+        }
+        heapBytes.addAndGet(-discardedBytes);
+        for (SpilledRun run : discarded) {
+            segments.release(run);
+            spilledBytes.addAndGet(-run.length);
+        }
+    }
+
+    /**
+     * Move the oldest hot messages of a session to disk, keeping at most keepBytes on heap.
+     * Only the spill thread removes hot messages, so the prefix chosen here is still the prefix afterwards.
+     */
+    private void spill(SessionLog session, long keepBytes) throws IOException {
+        List<StoredChatMessage> prefix;
+        long prefixBytes;
+        synchronized (session) {
+            int count = 0;
+            long remaining = session.hotBytes;
+            while (count < session.hot.size() && remaining > keepBytes) {
+                remaining -= session.hot.get(count).estimatedBytes();
+                count++;
+            }
+            if (count == 0) {
+                return;
+            }
+            prefix = new ArrayList<>(session.hot.subList(0, count));
+            prefixBytes = session.hotBytes - remaining;
+        }
+
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        SpilledRun run = encode(prefix, encoded);
+        segments.write(run, encoded.toByteArray());
+
+        synchronized (session) {
+            session.runs.add(run);
+            session.hot.subList(0, prefix.size()).clear();
+            session.hotBytes -= prefixBytes;
+        }
+        heapBytes.addAndGet(-prefixBytes);
+        spilledBytes.addAndGet(run.length);
+    }
+
+    /**
+     * Messages of a run from the block holding the first id after afterId, enough to fill wanted;
+     * empty if the run was dropped meanwhile
+     */
+    private List<StoredChatMessage> readRun(SpilledRun run, long afterId, int wanted) {
+        int block = Math.max(0, run.blockContaining(afterId + 1));
+        long lastIndex = Math.min(run.count, (long) block * INDEX_INTERVAL + INDEX_INTERVAL - 1 + wanted);
+        int endBlock = (int) ((lastIndex + INDEX_INTERVAL - 1) / INDEX_INTERVAL);
+        int from = run.blockOffsets[block];
+        int to = endBlock < run.blockOffsets.length ? run.blockOffsets[endBlock] : run.length;
+        try {
+            byte[] data = segments.read(run, from, to);
+            return data != null ? decode(data) : new ArrayList<>();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read spilled chat history", e);
+        }
+    }
+
+    /**
+     * Encode messages back to back, noting the id and offset of every INDEX_INTERVAL-th one
+     */
+    private SpilledRun encode(List<StoredChatMessage> messages, ByteArrayOutputStream buffer) throws IOException {
+        DataOutputStream out = new DataOutputStream(buffer);
+        int blocks = (messages.size() + INDEX_INTERVAL - 1) / INDEX_INTERVAL;
+        long[] blockIds = new long[blocks];
+        int[] blockOffsets = new int[blocks];
+        for (int i = 0; i < messages.size(); i++) {
+            StoredChatMessage message = messages.get(i);
+            if (i % INDEX_INTERVAL == 0) {
+                out.flush();
+                blockIds[i / INDEX_INTERVAL] = message.id;
+                blockOffsets[i / INDEX_INTERVAL] = buffer.size();
+            }
+            out.writeLong(message.id);
+            writeString(out, message.content);
+            out.writeByte(message.sender.ordinal());
+            out.writeByte(message.agentType == null ? -1 : message.agentType.ordinal());
+            out.writeByte(message.messageType.ordinal());
+            out.writeLong(message.epochMillis);
+            out.writeDouble(message.confidence);
+            out.writeInt(message.latencyMillis);
+            writeString(out, message.model);
+            writeString(out, message.extras == null ? null : mapper.writeValueAsString(message.extras));
+        }
+        out.flush();
+        return new SpilledRun(buffer.size(), messages.size(), blockIds, blockOffsets,
+                messages.get(messages.size() - 1).id);
+    }
+
+    private List<StoredChatMessage> decode(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        List<StoredChatMessage> messages = new ArrayList<>();
+        while (in.available() > 0) {
+            long id = in.readLong();
+            String content = readString(in);
+            StoredChatMessage.Sender sender = StoredChatMessage.Sender.values()[in.readByte()];
+            int agentType = in.readByte();
+            StoredChatMessage.MessageType messageType = StoredChatMessage.MessageType.values()[in.readByte()];
+            long epochMillis = in.readLong();
+            double confidence = in.readDouble();
+            int latencyMillis = in.readInt();
+            String model = readString(in);
+            String extras = readString(in);
+            messages.add(new StoredChatMessage(id, content, sender,
+                    agentType < 0 ? null : AgentType.values()[agentType], messageType, epochMillis,
+                    confidence, latencyMillis, model, extras == null ? null : mapper.readValue(extras, EXTRAS_TYPE)));
+        }
+        return messages;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * One session's history: spilled runs on disk followed by the hot tail on heap
+     */
+    private static class SessionLog {
+        final String sessionId;
+        final List<SpilledRun> runs = new ArrayList<>();
+        final ArrayList<StoredChatMessage> hot = new ArrayList<>();
+        long hotBytes;
+        boolean removed; // dropped from the store once empty; appenders move on to a new log
+        volatile long lastAccessNanos = System.nanoTime();
+
+        SessionLog(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        /**
+         * Ids are assigned under the session lock, so entries are always sorted by id.
+         * Returns null without calling the factory if the log was removed.
+         */
+        synchronized StoredChatMessage append(AtomicLong idGenerator, LongFunction<StoredChatMessage> factory) {
+            return removed ? null : add(factory.apply(idGenerator.getAndIncrement()));
+        }
+
+        synchronized StoredChatMessage add(StoredChatMessage message) {
+            if (removed) {
+                return null;
+            }
+            hot.add(message);
+            hotBytes += message.estimatedBytes();
+            lastAccessNanos = System.nanoTime();
+            return message;
+        }
+
+        List<StoredChatMessage> hotAfter(long afterId, int limit) {
+            int low = 0;
+            int high = hot.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (hot.get(mid).id <= afterId) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            int to = (int) Math.min(hot.size(), (long) low + limit);
+            return new ArrayList<>(hot.subList(low, to));
+        }
+    }
+
+    /**
+     * A block of spilled messages with a sparse index for seeking to an id without decoding the whole run.
+     * The location changes when compaction moves the run, and is null once the run is dropped.
+     */
+    private static class SpilledRun {
+        final int length;
+        final int count;
+        final long[] blockIds; // id of the first message of each block of INDEX_INTERVAL messages
+        final int[] blockOffsets; // its byte offset within the run
+        final long lastId;
+        volatile Location location;
+
+        SpilledRun(int length, int count, long[] blockIds, int[] blockOffsets, long lastId) {
+            this.length = length;
+            this.count = count;
+            this.blockIds = blockIds;
+            this.blockOffsets = blockOffsets;
+            this.lastId = lastId;
+        }
+
+        /**
+         * Index of the block that would hold this id: the last block starting at or before it, or -1
+         */
+        int blockContaining(long id) {
+            int low = 0;
+            int high = blockIds.length - 1;
+            int found = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (blockIds[mid] <= id) {
+                    found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return found;
+        }
+    }
+
+    private record Location(Segment segment, long offset) { }
+
+    /**
+     * One segment file with the runs in it that are still referenced
+     */
+    private static class Segment {
+        final Path path;
+        final FileChannel channel;
+        final Set<SpilledRun> runs = new LinkedHashSet<>();
+        long size;
+        long liveBytes;
+
+        Segment(Path path) throws IOException {
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+    }
+
+    /**
+     * Append-only segment files in the spill directory. Spilled history is a heap overflow,
+     * not a durable store, so leftover segments from a previous run are discarded on startup.
+     * A sealed segment is deleted once none of its runs is referenced, and compacted, by moving its
+     * live runs to the current segment, once less than half of it is.
+     */
+    private static class SegmentFiles implements Closeable {
+        private static final double COMPACT_BELOW = 0.5;
+
+        private final Path directory;
+        private final long segmentSize;
+        private final List<Segment> segments = new ArrayList<>(); // sealed ones, then the current one
+        // Reads share the read lock; closing a segment takes the write lock, so no read sees it closed
+        private final ReadWriteLock closing = new ReentrantReadWriteLock();
+        private final AtomicLong fileBytes = new AtomicLong();
+        private int nextNumber;
+
+        SegmentFiles(Path directory, long segmentSize) {
+            this.directory = directory;
+            this.segmentSize = segmentSize;
+            try {
+                Files.createDirectories(directory);
+                try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, "segment-*.seg")) {
+                    for (Path path : stale) {
+                        Files.deleteIfExists(path);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not prepare chat spill directory " + directory, e);
+            }
+        }
+
+        /**
+         * Write a newly encoded run at the end of the current segment
+         */
+        synchronized void write(SpilledRun run, byte[] data) throws IOException {
+            place(run, data);
+        }
+
+        private void place(SpilledRun run, byte[] data) throws IOException {
+            Segment current = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (current == null || (current.size > 0 && current.size + data.length > segmentSize)) {
+                current = new Segment(directory.resolve(String.format("segment-%05d.seg", nextNumber++)));
+                segments.add(current);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            long position = current.size;
+            while (buffer.hasRemaining()) {
+                position += current.channel.write(buffer, position);
+            }
+            run.location = new Location(current, current.size);
+            current.runs.add(run);
+            current.liveBytes += data.length;
+            fileBytes.addAndGet(position - current.size);
+            current.size = position;
+        }
+
+        /**
+         * Bytes [from, to) of a run, or null if it was dropped
+         */
+        byte[] read(SpilledRun run, int from, int to) throws IOException {
+            closing.readLock().lock();
+            try {
+                Location location = run.location;
+                if (location == null) {
+                    return null;
+                }
+                return read(location.segment(), location.offset() + from, to - from);
+            } finally {
+                closing.readLock().unlock();
+            }
+        }
+
+        private static byte[] read(Segment segment, long offset, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            long position = offset;
+            while (buffer.hasRemaining()) {
+                int read = segment.channel.read(buffer, position);
+                if (read < 0) {
+                    throw new EOFException("Truncated chat spill segment " + segment.path);
+                }
+                position += read;
+            }
+            return buffer.array();
+        }
+
+        /**
+         * Forget a dropped run, deleting its segment if that was the segment's last live run
+         */
+        synchronized void release(SpilledRun run) {
+            Segment segment = run.location.segment();
+            run.location = null;
+            segment.runs.remove(run);
+            segment.liveBytes -= run.length;
+            if (segment.runs.isEmpty() && segment != segments.get(segments.size() - 1)) {
+                delete(segment);
+            }
+        }
+
+        /**
+         * Move the live runs out of sealed segments that are mostly dropped history, and delete those segments
+         */
+        synchronized void compact() throws IOException {
+            for (Segment segment : new ArrayList<>(segments.subList(0, Math.max(0, segments.size() - 1)))) {
+                if (segment.liveBytes >= segment.size * COMPACT_BELOW) {
+                    continue;
+                }
+                for (SpilledRun run : new ArrayList<>(segment.runs)) {
+                    place(run, read(segment, run.location.offset(), run.length));
+                }
+                delete(segment);
+            }
+        }
+
+        private void delete(Segment segment) {
+            segments.remove(segment);
+            fileBytes.addAndGet(-segment.size);
+            closing.writeLock().lock();
+            try {
+                segment.channel.close();
+            } catch (IOException e) {
+                log.debug("Could not close chat spill segment {}", segment.path, e);
+            } finally {
+                closing.writeLock().unlock();
+            }
+            try {
+                Files.deleteIfExists(segment.path);
+            } catch (IOException e) {
+                log.debug("Could not remove chat spill segment {}", segment.path, e);
+            }
+        }
+
+        long getFileBytes() {
+            return fileBytes.get();
+        }
+
+        @Override
+        public synchronized void close() {
+            for (Segment segment : new ArrayList<>(segments)) {
+                delete(segment);
+            }
+        }
+    }
+}
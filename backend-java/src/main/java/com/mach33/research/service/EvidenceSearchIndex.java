@@ -0,0 +1,366 @@
+package com.mach33.research.service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongToDoubleFunction;
+
+/**
+ * Per-session inverted index over evidence content, source and tags.
+ * Queries match every term (the last one as a prefix, for search-as-you-type)
+ * and are ranked by BM25 scaled by the evidence's current reliability score.
+ * A prefix expands to at most MAX_PREFIX_EXPANSIONS indexed terms, those found in the most documents;
+ * results say when a prefix had more.
+ */
+class EvidenceSearchIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int CONTENT_WEIGHT = 1;
+    private static final int SOURCE_WEIGHT = 1;
+    private static final int TAG_WEIGHT = 2;
+    private static final int MAX_TOKEN_LENGTH = 64;
+    private static final int MAX_PREFIX_EXPANSIONS = 64;
+
+    private final Map<String, SessionIndex> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * Ranked search result: evidence id and relevance score
+     */
+    static final class Hit {
+        final long id;
+        final double score;
+
+        Hit(long id, double score) {
+            this.id = id;
+            this.score = score;
+        }
+    }
+
+    void add(long id, String sessionId, String content, String source, List<String> tags) {
+        Map<String, Integer> terms = new HashMap<>();
+        int length = countTerms(content, CONTENT_WEIGHT, terms)
+                + countTerms(source, SOURCE_WEIGHT, terms);
+        for (String tag : tags) {
+            length += countTerms(tag, TAG_WEIGHT, terms);
+        }
+        sessions.computeIfAbsent(sessionId, s -> new SessionIndex()).add(id, terms, length);
+    }
+
+    void addTags(long id, String sessionId, List<String> tags) {
+        Map<String, Integer> terms = new HashMap<>();
+        int length = 0;
+        for (String tag : tags) {
+            length += countTerms(tag, TAG_WEIGHT, terms);
+        }
+        SessionIndex index = sessions.get(sessionId);
+        if (index != null && !terms.isEmpty()) {
+            index.add(id, terms, length);
+        }
+    }
+
+    /**
+     * Hits of a search, best first; truncated if the prefix term had more expansions than were scored
+     */
+    static final class Result {
+        static final Result EMPTY = new Result(Collections.emptyList(), false);
+
+        final List<Hit> hits;
+        final boolean truncated;
+
+        Result(List<Hit> hits, boolean truncated) {
+            this.hits = hits;
+            this.truncated = truncated;
+        }
+    }
+
+    /**
+     * Top hits for the query, best first; reliability maps an evidence id to its score in [0, 1]
+     */
+    Result search(String sessionId, String query, int limit, LongToDoubleFunction reliability) {
+        SessionIndex index = sessions.get(sessionId);
+        List<String> tokens = tokenize(query);
+        if (index == null || tokens.isEmpty() || limit <= 0) {
+            return Result.EMPTY;
+        }
+        boolean lastIsPrefix = !Character.isWhitespace(query.charAt(query.length() - 1));
+        return index.search(tokens, lastIsPrefix, limit, reliability);
+    }
+
+    private static int countTerms(String text, int weight, Map<String, Integer> terms) {
+        int count = 0;
+        for (String token : tokenize(text)) {
+            terms.merge(token, weight, Integer::sum);
+            count += weight;
+        }
+        return count;
+    }
+
+    /**
+     * Lowercased runs of letters and digits; duplicates are kept
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                if (token.length() < MAX_TOKEN_LENGTH) {
+                    token.append(Character.toLowerCase(c));
+                }
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Document ordinals with weighted term frequencies, sorted by ordinal
+     */
+    private static final class Postings {
+        int[] docs = new int[4];
+        int[] freqs = new int[4];
+        int size;
+
+        void add(int doc, int freq) {
+            if (size > 0 && docs[size - 1] == doc) {
+                freqs[size - 1] += freq;
+                return;
+            }
+            int at = size == 0 || docs[size - 1] < doc ? size : Arrays.binarySearch(docs, 0, size, doc);
+            if (at >= 0 && at < size) {
+                freqs[at] += freq;
+                return;
+            }
+            int insert = at >= 0 ? at : -at - 1;
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+            }
+            System.arraycopy(docs, insert, docs, insert + 1, size - insert);
+            System.arraycopy(freqs, insert, freqs, insert + 1, size - insert);
+            docs[insert] = doc;
+            freqs[insert] = freq;
+            size++;
+        }
+    }
+
+    /**
+     * Per-term BM25 contributions for the documents containing it, sorted by ordinal
+     */
+    private static final class TermScores {
+        final int[] docs;
+        final double[] scores;
+        final boolean truncated;
+
+        TermScores(int[] docs, double[] scores, boolean truncated) {
+            this.docs = docs;
+            this.scores = scores;
+            this.truncated = truncated;
+        }
+    }
+
+    private static final class SessionIndex {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final TreeMap<String, Postings> terms = new TreeMap<>();
+        private final Map<Long, Integer> ordinals = new HashMap<>();
+        private long[] ids = new long[16];
+        private int[] lengths = new int[16];
+        private int docCount;
+        private long totalLength;
+
+        void add(long id, Map<String, Integer> docTerms, int length) {
+            lock.writeLock().lock();
+            try {
+                Integer ordinal = ordinals.get(id);
+                if (ordinal == null) {
+                    ordinal = docCount++;
+                    if (ordinal == ids.length) {
+                        ids = Arrays.copyOf(ids, ordinal * 2);
+                        lengths = Arrays.copyOf(lengths, ordinal * 2);
+                    }
+                    ids[ordinal] = id;
+                    ordinals.put(id, ordinal);
+                }
+                lengths[ordinal] += length;
+                totalLength += length;
+                for (Map.Entry<String, Integer> term : docTerms.entrySet()) {
+                    terms.computeIfAbsent(term.getKey(), t -> new Postings()).add(ordinal, term.getValue());
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        Result search(List<String> tokens, boolean lastIsPrefix, int limit, LongToDoubleFunction reliability) {
+            lock.readLock().lock();
+            try {
+                double averageLength = docCount == 0 ? 1.0 : Math.max(1.0, (double) totalLength / docCount);
+                List<TermScores> perTerm = new ArrayList<>();
+                Set<String> seen = new HashSet<>();
+                boolean truncated = false;
+                for (int i = 0; i < tokens.size(); i++) {
+                    boolean prefix = lastIsPrefix && i == tokens.size() - 1;
+                    if (!seen.add((prefix ? "*" : "") + tokens.get(i))) {
+                        continue;
+                    }
+                    TermScores scores = scoreTerm(tokens.get(i), prefix, averageLength);
+                    if (scores.docs.length == 0) {
+                        return Result.EMPTY;
+                    }
+                    truncated |= scores.truncated;
+                    perTerm.add(scores);
+                }
+                perTerm.sort(Comparator.comparingInt(t -> t.docs.length));
+                return new Result(rank(perTerm, limit, reliability), truncated);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * BM25 contribution of one query term; a prefix term sums over its expansions
+         */
+        private TermScores scoreTerm(String token, boolean prefix, double averageLength) {
+            if (!prefix) {
+                Postings postings = terms.get(token);
+                return postings != null ? score(postings, averageLength) : new TermScores(new int[0], new double[0], false);
+            }
+            List<Postings> expansions = new ArrayList<>(terms.subMap(token, token + Character.MAX_VALUE).values());
+            boolean truncated = expansions.size() > MAX_PREFIX_EXPANSIONS;
+            if (truncated) {
+                expansions.sort(Comparator.comparingInt((Postings p) -> p.size).reversed());
+                expansions = expansions.subList(0, MAX_PREFIX_EXPANSIONS);
+            }
+            if (expansions.isEmpty()) {
+                return new TermScores(new int[0], new double[0], false);
+            }
+            return expansions.size() == 1 ? score(expansions.get(0), averageLength) : merge(expansions, averageLength, truncated);
+        }
+
+        private TermScores score(Postings postings, double averageLength) {
+            double[] scores = new double[postings.size];
+            double idf = idf(postings.size);
+            for (int i = 0; i < postings.size; i++) {
+                scores[i] = bm25(idf, postings.freqs[i], lengths[postings.docs[i]], averageLength);
+            }
+            return new TermScores(Arrays.copyOf(postings.docs, postings.size), scores, false);
+        }
+
+        /**
+         * Merge the expansions' postings by ordinal through a heap of cursors, summing the scores of
+         * ordinals found in several expansions
+         */
+        private TermScores merge(List<Postings> expansions, double averageLength, boolean truncated) {
+            int count = expansions.size();
+            int[] cursors = new int[count];
+            double[] idfs = new double[count];
+            int[] heap = new int[count]; // expansion indexes, ordered by the ordinal under their cursor
+            int heapSize = 0;
+            int total = 0;
+            for (int e = 0; e < count; e++) {
+                Postings postings = expansions.get(e);
+                idfs[e] = idf(postings.size);
+                total += postings.size;
+                heap[heapSize++] = e;
+            }
+            for (int i = heapSize / 2 - 1; i >= 0; i--) {
+                siftDown(heap, heapSize, i, expansions, cursors);
+            }
+
+            int[] docs = new int[total];
+            double[] scores = new double[total];
+            int merged = 0;
+            while (heapSize > 0) {
+                int e = heap[0];
+                Postings postings = expansions.get(e);
+                int doc = postings.docs[cursors[e]];
+                double score = bm25(idfs[e], postings.freqs[cursors[e]], lengths[doc], averageLength);
+                if (merged > 0 && docs[merged - 1] == doc) {
+                    scores[merged - 1] += score;
+                } else {
+                    docs[merged] = doc;
+                    scores[merged++] = score;
+                }
+                if (++cursors[e] == postings.size) {
+                    heap[0] = heap[--heapSize];
+                }
+                siftDown(heap, heapSize, 0, expansions, cursors);
+            }
+            return new TermScores(Arrays.copyOf(docs, merged), Arrays.copyOf(scores, merged), truncated);
+        }
+
+        private static void siftDown(int[] heap, int size, int at, List<Postings> expansions, int[] cursors) {
+            int e = heap[at];
+            int doc = expansions.get(e).docs[cursors[e]];
+            while (true) {
+                int child = 2 * at + 1;
+                if (child >= size) {
+                    break;
+                }
+                int childDoc = expansions.get(heap[child]).docs[cursors[heap[child]]];
+                if (child + 1 < size) {
+                    int rightDoc = expansions.get(heap[child + 1]).docs[cursors[heap[child + 1]]];
+                    if (rightDoc < childDoc) {
+                        child++;
+                        childDoc = rightDoc;
+                    }
+                }
+                if (doc <= childDoc) {
+                    break;
+                }
+                heap[at] = heap[child];
+                at = child;
+            }
+            heap[at] = e;
+        }
+
+        /**
+         * Intersect the terms, rarest first, and keep the best hits in a bounded heap
+         */
+        private List<Hit> rank(List<TermScores> perTerm, int limit, LongToDoubleFunction reliability) {
+            TermScores rarest = perTerm.get(0);
+            int[] cursors = new int[perTerm.size()];
+            PriorityQueue<Hit> best = new PriorityQueue<>(Comparator.comparingDouble((Hit h) -> h.score));
+            candidates:
+            for (int c = 0; c < rarest.docs.length; c++) {
+                int doc = rarest.docs[c];
+                double relevance = rarest.scores[c];
+                for (int t = 1; t < perTerm.size(); t++) {
+                    TermScores term = perTerm.get(t);
+                    int at = Arrays.binarySearch(term.docs, cursors[t], term.docs.length, doc);
+                    if (at < 0) {
+                        cursors[t] = -at - 1;
+                        continue candidates;
+                    }
+                    cursors[t] = at + 1;
+                    relevance += term.scores[at];
+                }
+                long id = ids[doc];
+                double score = relevance * (0.5 + reliability.applyAsDouble(id));
+                if (best.size() < limit) {
+                    best.add(new Hit(id, score));
+                } else if (score > best.peek().score) {
+                    best.poll();
+                    best.add(new Hit(id, score));
+                }
+            }
+            List<Hit> hits = new ArrayList<>(best);
+            hits.sort(Comparator.comparingDouble((Hit h) -> h.score).reversed().thenComparingLong(h -> h.id));
+            return hits;
+        }
+
+        private double idf(int documentFrequency) {
+            return Math.log(1.0 + (docCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+        }
+
+        private static double bm25(double idf, int freq, int length, double averageLength) {
+            return idf * freq * (K1 + 1) / (freq + K1 * (1 - B + B * length / averageLength));
+        }
+    }
+}
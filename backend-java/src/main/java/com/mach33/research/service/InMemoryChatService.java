@@ -1,126 +1,508 @@
 package com.mach33.research.service;
 
+import com.mach33.research.agent.AgentBulkhead;
+import com.mach33.research.agent.AgentFanOut;
+import com.mach33.research.agent.AgentProvider;
+import com.mach33.research.agent.AgentReply;
+import com.mach33.research.agent.AgentStats;
+import com.mach33.research.agent.AgentTimeoutException;
+import com.mach33.research.agent.AgentType;
+import com.mach33.research.agent.ChunkSplitter;
+import com.mach33.research.config.ChatProperties;
+import com.mach33.research.util.BoundedTtlCache;
+import com.mach33.research.util.KeywordMatcher;
+import com.mach33.research.util.RollingLatencyHistogram;
+import com.mach33.research.util.SingleFlight;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 
 @Service
 public class InMemoryChatService {
     
-    private final Map<Long, ChatMessageDto> messages = new ConcurrentHashMap<>();
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+    
+    private static final String[] RESEARCH_KEYWORDS = {
+        "research", "study", "analysis", "evidence", "data", "methodology",
+        "hypothesis", "theory", "findings", "results", "conclusion", "literature"
+    };
+    private static final KeywordMatcher RESEARCH_KEYWORD_MATCHER = KeywordMatcher.of(RESEARCH_KEYWORDS);
+    private static final String JOURNAL_MESSAGE = "chat.message";
+    private static final String JOURNAL_TRUNCATION = "chat.truncate";
+    
+    private final ChatHistoryStore historyStore;
+    private final Map<String, SessionInsights> insightsBySession = new ConcurrentHashMap<>();
     private final AtomicLong idGenerator = new AtomicLong(1);
+    private final Map<AgentType, AgentProvider> providers = new EnumMap<>(AgentType.class);
+    private final Map<AgentType, AgentStats> agentStats = new EnumMap<>(AgentType.class);
+    private final Map<AgentType, AgentBulkhead> bulkheads = new EnumMap<>(AgentType.class);
+    private final ChatProperties properties;
+    private final ExecutorService streamExecutor = new ThreadPoolExecutor(
+            4, 32, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(256), namedThreadFactory("chat-stream"));
+    private final ExecutorService fanOutExecutor = new ThreadPoolExecutor(
+            8, 64, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(512), namedThreadFactory("agent-fanout"));
+    private final ScheduledExecutorService hedgeScheduler =
+            Executors.newSingleThreadScheduledExecutor(namedThreadFactory("agent-hedge"));
+    private final AgentFanOut fanOut;
+    private final BoundedTtlCache<String, AgentResponse> responseCache;
+    private final SingleFlight<String, StoredChatMessage> inFlightMessages;
+    private final StateJournal journal;
+    
+    public InMemoryChatService(List<AgentProvider> agentProviders, ChatProperties properties, MeterRegistry meterRegistry,
+                               StateJournal journal) {
+        for (AgentProvider provider : agentProviders) {
+            providers.put(AgentType.valueOf(provider.getAgentType()), provider);
+        }
+        for (AgentType type : AgentType.values()) {
+            AgentStats stats = new AgentStats(properties.getMetrics().getWindow(), properties.getMetrics().getSlices());
+            ChatProperties.Limits limits = properties.getBulkheads().forAgent(type.name());
+            agentStats.put(type, stats);
+            bulkheads.put(type, new AgentBulkhead(type.name(), limits.getMaxConcurrent(), limits.getMaxWaiting(),
+                    limits.getMaxWait(), () -> retryAfterSeconds(stats)));
+        }
+        this.properties = properties;
+        this.fanOut = new AgentFanOut(fanOutExecutor, hedgeScheduler, this::invokeFanOutAttempt);
+        this.responseCache = new BoundedTtlCache<>(properties.getCache().getMaxEntries(), properties.getCache().getTtl());
+        this.historyStore = new ChatHistoryStore(properties.getRetention(), this::journalDrop);
+        this.inFlightMessages = new SingleFlight<>(properties.getDedupe().getWindow());
+        this.journal = journal;
+        journal.register(JOURNAL_MESSAGE, JournaledMessage.class, null,
+                journaled -> historyStore.isRetained(journaled.sessionId, journaled.id), this::restoreMessage);
+        journal.register(JOURNAL_TRUNCATION, JournaledTruncation.class, truncation -> truncation.sessionId,
+                this::restoreTruncation);
+        registerCacheMetrics(meterRegistry);
+        registerHistoryMetrics(meterRegistry);
+        registerAgentMetrics(meterRegistry);
+        FunctionCounter.builder("chat.message.coalesced", inFlightMessages, SingleFlight::getCoalesced)
+                .description("Messages answered by an identical in-flight or recent request").register(meterRegistry);
+    }
+    
+    private void registerCacheMetrics(MeterRegistry registry) {
+        FunctionCounter.builder("chat.response.cache.requests", responseCache, BoundedTtlCache::getHits)
+                .tag("result", "hit").description("Agent reply cache lookups").register(registry);
+        FunctionCounter.builder("chat.response.cache.requests", responseCache, BoundedTtlCache::getMisses)
+                .tag("result", "miss").description("Agent reply cache lookups").register(registry);
+        FunctionCounter.builder("chat.response.cache.evictions", responseCache, BoundedTtlCache::getSizeEvictions)
+                .tag("cause", "size").description("Agent reply cache evictions").register(registry);
+        FunctionCounter.builder("chat.response.cache.evictions", responseCache, BoundedTtlCache::getExpirations)
+                .tag("cause", "expired").description("Agent reply cache evictions").register(registry);
+        Gauge.builder("chat.response.cache.size", responseCache, BoundedTtlCache::size)
+                .description("Agent replies currently cached").register(registry);
+    }
+    
+    private void registerHistoryMetrics(MeterRegistry registry) {
+        Gauge.builder("chat.history.heap.bytes", historyStore, ChatHistoryStore::getHeapBytes)
+                .description("Estimated heap held by chat history").baseUnit("bytes").register(registry);
+        Gauge.builder("chat.history.spilled.bytes", historyStore, ChatHistoryStore::getSpilledBytes)
+                .description("Chat history spilled to disk segments").baseUnit("bytes").register(registry);
+        Gauge.builder("chat.history.segment.bytes", historyStore, ChatHistoryStore::getSegmentBytes)
+                .description("Size of the chat spill segment files").baseUnit("bytes").register(registry);
+        FunctionCounter.builder("chat.history.dropped", historyStore, ChatHistoryStore::getDroppedMessages)
+                .description("Spilled chat messages dropped over the disk budget").register(registry);
+    }
+    
+    private void registerAgentMetrics(MeterRegistry registry) {
+        for (Map.Entry<AgentType, AgentStats> entry : agentStats.entrySet()) {
+            String agent = entry.getKey().name();
+            AgentStats stats = entry.getValue();
+            FunctionCounter.builder("chat.agent.calls", stats, AgentStats::getSuccesses)
+                    .tag("agent", agent).tag("outcome", "success").description("Agent calls").register(registry);
+            FunctionCounter.builder("chat.agent.calls", stats, AgentStats::getFailures)
+                    .tag("agent", agent).tag("outcome", "failure").description("Agent calls").register(registry);
+            FunctionCounter.builder("chat.agent.calls", stats, AgentStats::getCancellations)
+                    .tag("agent", agent).tag("outcome", "cancelled").description("Agent calls").register(registry);
+            Gauge.builder("chat.agent.inflight", stats, AgentStats::getInFlight)
+                    .tag("agent", agent).description("Agent calls in progress").register(registry);
+            Gauge.builder("chat.agent.error.rate", stats, s -> s.snapshot().errorRate())
+                    .tag("agent", agent).description("Failed share of agent calls in the rolling window").register(registry);
+            registerLatencyGauge(registry, agent, "0.5", stats, snapshot -> snapshot.p50Micros);
+            registerLatencyGauge(registry, agent, "0.95", stats, snapshot -> snapshot.p95Micros);
+            registerLatencyGauge(registry, agent, "0.99", stats, snapshot -> snapshot.p99Micros);
+            registerLatencyGauge(registry, agent, "max", stats, snapshot -> snapshot.maxMicros);
+            
+            AgentBulkhead bulkhead = bulkheads.get(entry.getKey());
+            Gauge.builder("chat.agent.bulkhead.active", bulkhead, AgentBulkhead::getActive)
+                    .tag("agent", agent).description("Bulkhead permits in use").register(registry);
+            Gauge.builder("chat.agent.bulkhead.waiting", bulkhead, AgentBulkhead::getWaiting)
+                    .tag("agent", agent).description("Callers queued for a bulkhead permit").register(registry);
+            FunctionCounter.builder("chat.agent.bulkhead.rejected", bulkhead, AgentBulkhead::getQueueFullRejections)
+                    .tag("agent", agent).tag("reason", "queue_full").description("Calls rejected by the bulkhead").register(registry);
+            FunctionCounter.builder("chat.agent.bulkhead.rejected", bulkhead, AgentBulkhead::getWaitTimeoutRejections)
+                    .tag("agent", agent).tag("reason", "wait_timeout").description("Calls rejected by the bulkhead").register(registry);
+        }
+    }
+    
+    /**
+     * Suggested back-off for rejected callers: the agent's recent p95 latency, at least one second
+     */
+    private static long retryAfterSeconds(AgentStats stats) {
+        return Math.max(1, (long) Math.ceil(stats.snapshot().p95Micros / 1_000_000.0));
+    }
+    
+    private static void registerLatencyGauge(MeterRegistry registry, String agent, String quantile, AgentStats stats,
+                                             ToLongFunction<RollingLatencyHistogram.Snapshot> micros) {
+        Gauge.builder("chat.agent.latency", stats, s -> micros.applyAsLong(s.snapshot()) / 1000.0)
+                .tag("agent", agent).tag("quantile", quantile).baseUnit("milliseconds")
+                .description("Agent call latency in the rolling window").register(registry);
+    }
     
     /**
      * Send a message and get AI agent response
      */
-    public ChatMessageDto sendMessage(String content, String sessionId, String agentType) {
-        // Store user message
-        ChatMessageDto userMessage = new ChatMessageDto();
-        userMessage.id = idGenerator.getAndIncrement();
-        userMessage.content = content;
-        userMessage.sessionId = sessionId;
-        userMessage.sender = "USER";
-        userMessage.agentType = null;
-        userMessage.timestamp = LocalDateTime.now();
-        userMessage.messageType = "TEXT";
-        userMessage.metadata = new HashMap<>();
-        
-        messages.put(userMessage.id, userMessage);
-        
-        // Generate AI response
-        ChatMessageDto aiResponse = generateAIResponse(content, sessionId, agentType);
-        messages.put(aiResponse.id, aiResponse);
+    public StoredChatMessage sendMessage(String content, String sessionId, String agentType) {
+        return sendMessage(content, sessionId, agentType, new SendOptions());
+    }
+    
+    /**
+     * Send a message and get AI agent response, with per-request options
+     */
+    public StoredChatMessage sendMessage(String content, String sessionId, String agentType, SendOptions options) {
+        AgentType type = AgentType.parse(agentType);
+        requireSession(sessionId);
+        if (!properties.getDedupe().isEnabled()) {
+            return exchange(content, sessionId, type, options);
+        }
+        return inFlightMessages.execute(flightKey(content, sessionId, type, options),
+                () -> exchange(content, sessionId, type, options));
+    }
+    
+    private StoredChatMessage exchange(String content, String sessionId, AgentType type, SendOptions options) {
+        return respond(content, sessionId, type, options, chunk -> { });
+    }
+    
+    /**
+     * Send a message and stream the AI agent response chunk by chunk.
+     * The user message is stored once the agent has room for the request; the assembled response is stored
+     * once generation completes.
+     */
+    public CompletableFuture<StoredChatMessage> streamMessage(String content, String sessionId, String agentType,
+                                                              SendOptions options, Consumer<String> onChunk) {
+        AgentType type = AgentType.parse(agentType);
+        requireSession(sessionId);
+        if (!properties.getDedupe().isEnabled()) {
+            return startStream(content, sessionId, type, options, onChunk);
+        }
         
-        return aiResponse;
+        // A caller that joins another's generation gets the finished reply replayed as chunks
+        boolean[] leading = {false};
+        CompletableFuture<StoredChatMessage> reply = inFlightMessages.run(flightKey(content, sessionId, type, options), () -> {
+            leading[0] = true;
+            return startStream(content, sessionId, type, options, onChunk);
+        });
+        if (leading[0]) {
+            return reply;
+        }
+        return reply.thenApply(message -> {
+            ChunkSplitter.split(message.content).forEach(onChunk);
+            return message;
+        });
+    }
+    
+    private CompletableFuture<StoredChatMessage> startStream(String content, String sessionId, AgentType type,
+                                                             SendOptions options, Consumer<String> onChunk) {
+        return CompletableFuture.supplyAsync(() -> respond(content, sessionId, type, options, onChunk), streamExecutor);
     }
     
     /**
-     * Generate AI agent response (mock implementation for now)
+     * Identical requests: same session, agent, AUTO mode, cache bypass and exact content
      */
-    private ChatMessageDto generateAIResponse(String userMessage, String sessionId, String agentType) {
-        ChatMessageDto response = new ChatMessageDto();
-        response.id = idGenerator.getAndIncrement();
-        response.sessionId = sessionId;
-        response.sender = "AI";
-        response.agentType = agentType != null ? agentType.toUpperCase() : "CLAUDE";
-        response.timestamp = LocalDateTime.now();
-        response.messageType = "TEXT";
-        response.metadata = new HashMap<>();
+    private static String flightKey(String content, String sessionId, AgentType type, SendOptions options) {
+        return sessionId + '\u0000' + type.name() + '\u0000' + options.autoMode + '\u0000' + options.bypassCache
+                + '\u0000' + content;
+    }
+    
+    private static void requireSession(String sessionId) {
+        if (sessionId == null) {
+            throw new IllegalArgumentException("sessionId is required");
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        streamExecutor.shutdownNow();
+        fanOutExecutor.shutdownNow();
+        hedgeScheduler.shutdownNow();
+        historyStore.close();
+    }
+    
+    /**
+     * Store the user's side of an exchange
+     */
+    private StoredChatMessage storeUserMessage(String content, String sessionId) {
+        requireSession(sessionId);
+        long now = System.currentTimeMillis();
+        return appendMessage(sessionId, id -> new StoredChatMessage(id, content, StoredChatMessage.Sender.USER,
+                null, StoredChatMessage.MessageType.TEXT, now, Double.NaN, -1, null, null));
+    }
+    
+    /**
+     * Store a generated reply; the timestamp is when generation started
+     */
+    private StoredChatMessage storeAIResponse(String sessionId, AgentResponse response) {
+        return appendMessage(sessionId, id -> new StoredChatMessage(id, response.content, StoredChatMessage.Sender.AI,
+                response.agentType, StoredChatMessage.MessageType.TEXT, response.startedAtMillis,
+                response.confidence, response.latencyMillis, response.model, response.extras));
+    }
+    
+    /**
+     * Append a message to its session's history under the next id and update the session's insights.
+     * The message is journaled while the session's history is locked, so the log keeps each session in id order.
+     */
+    private StoredChatMessage appendMessage(String sessionId, LongFunction<StoredChatMessage> factory) {
+        long[] sequence = {0};
+        StoredChatMessage message = historyStore.append(sessionId, idGenerator, id -> {
+            StoredChatMessage created = factory.apply(id);
+            sequence[0] = journal.append(JOURNAL_MESSAGE, JournaledMessage.of(sessionId, created));
+            return created;
+        });
+        insightsBySession.computeIfAbsent(sessionId, id -> new SessionInsights()).record(message);
+        journal.awaitDurable(sequence[0]);
+        return message;
+    }
+    
+    private void restoreMessage(JournaledMessage journaled) {
+        StoredChatMessage message = journaled.toMessage();
+        idGenerator.accumulateAndGet(message.id + 1, Math::max);
+        historyStore.restore(journaled.sessionId, message);
+        insightsBySession.computeIfAbsent(journaled.sessionId, id -> new SessionInsights()).record(message);
+    }
+    
+    /**
+     * Journal that the history store is dropping a session's messages up to throughId over its disk budget,
+     * so replay leaves them out and compaction deletes them. Called with the session locked, after its
+     * messages were journaled; drops wait until replay has finished.
+     */
+    private boolean journalDrop(String sessionId, Long throughId) {
+        if (!journal.isOpen()) {
+            return false;
+        }
+        journal.append(JOURNAL_TRUNCATION, JournaledTruncation.of(sessionId, throughId));
+        return true;
+    }
+    
+    private void restoreTruncation(JournaledTruncation truncation) {
+        idGenerator.accumulateAndGet(truncation.throughId + 1, Math::max);
+        historyStore.truncate(truncation.sessionId, truncation.throughId);
+    }
+    
+    /**
+     * Store the user's message and the reply from the provider for the agent type, or from all providers
+     * for AUTO. The agent's bulkhead permit is taken before the user message is stored, so a request
+     * rejected as busy stores nothing and its retry does not leave a duplicate behind; a cached reply
+     * needs no permit.
+     */
+    private StoredChatMessage respond(String userMessage, String sessionId, AgentType agentType,
+                                      SendOptions options, Consumer<String> onChunk) {
+        AgentProvider provider = providers.get(agentType);
+        if (agentType != AgentType.AUTO && provider == null) {
+            throw new IllegalArgumentException("No provider registered for agent type: " + agentType);
+        }
+        long startedAtMillis = System.currentTimeMillis();
         
-        // Mock AI responses based on agent type
-        response.content = generateMockResponse(userMessage, response.agentType);
+        boolean useCache = properties.getCache().isEnabled();
+        String cacheKey = useCache ? cacheKey(agentType, options, userMessage) : null;
+        if (useCache && !options.bypassCache) {
+            AgentResponse cached = responseCache.get(cacheKey);
+            if (cached != null) {
+                storeUserMessage(userMessage, sessionId);
+                ChunkSplitter.split(cached.content).forEach(onChunk);
+                return storeAIResponse(sessionId, cached.asCacheHit(startedAtMillis));
+            }
+        }
         
-        // Add metadata
-        response.metadata.put("confidence", 0.85);
-        response.metadata.put("processingTime", "1.2s");
-        response.metadata.put("model", getModelName(response.agentType));
+        AgentBulkhead bulkhead = bulkheads.get(agentType);
+        try {
+            bulkhead.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + agentType, e);
+        }
+        AgentResponse response;
+        try {
+            storeUserMessage(userMessage, sessionId);
+            if (agentType == AgentType.AUTO) {
+                response = applyFanOut(userMessage, options);
+                ChunkSplitter.split(response.content).forEach(onChunk);
+            } else {
+                response = invokeAgent(agentType, provider, userMessage, onChunk);
+            }
+        } finally {
+            bulkhead.release();
+        }
+        response.startedAtMillis = startedAtMillis;
         
-        return response;
+        if (useCache) {
+            responseCache.put(cacheKey, response);
+        }
+        return storeAIResponse(sessionId, response);
     }
     
     /**
-     * Generate mock responses for different AI agents
+     * Cache key: agent type, AUTO mode if any, and the prompt with case, whitespace and trailing punctuation normalized
      */
-    private String generateMockResponse(String userMessage, String agentType) {
-        String lowerMessage = userMessage.toLowerCase();
+    private String cacheKey(AgentType agentType, SendOptions options, String prompt) {
+        StringBuilder key = new StringBuilder(agentType.name()).append('|');
+        if (agentType == AgentType.AUTO) {
+            key.append(options.autoMode != null ? options.autoMode.toUpperCase() : properties.getAuto().getMode().toUpperCase());
+        }
+        key.append('|');
         
-        switch (agentType) {
-            case "CLAUDE":
-                if (lowerMessage.contains("research") || lowerMessage.contains("study")) {
-                    return "I'd be happy to help with your research question. Based on current literature, there are several key considerations to explore. Let me break this down systematically and suggest some evidence-based approaches.";
-                } else if (lowerMessage.contains("evidence") || lowerMessage.contains("data")) {
-                    return "For evidence evaluation, I recommend examining the source credibility, methodology, and potential biases. Would you like me to help analyze specific evidence or suggest research methodologies?";
-                } else {
-                    return "I understand your question. Let me provide a thoughtful analysis based on available information and research best practices.";
-                }
-                
-            case "CHATGPT":
-                if (lowerMessage.contains("research") || lowerMessage.contains("study")) {
-                    return "Great research question! I can help you explore this topic from multiple angles. Let's start by identifying the key variables and potential research methodologies that would be most appropriate.";
-                } else if (lowerMessage.contains("evidence") || lowerMessage.contains("data")) {
-                    return "When evaluating evidence, it's important to consider the quality of sources, sample sizes, and research design. I can help you assess the strength of different types of evidence.";
-                } else {
-                    return "That's an interesting question! Let me help you think through this systematically and provide some insights based on current knowledge.";
-                }
-                
-            case "GROK":
-                if (lowerMessage.contains("research") || lowerMessage.contains("study")) {
-                    return "Yo! That's a solid research question. Let me dig into the latest data and trends. I've got access to real-time info that might give you some fresh perspectives on this topic.";
-                } else if (lowerMessage.contains("evidence") || lowerMessage.contains("data")) {
-                    return "Evidence time! I love digging through data. Let me check what's trending and what the latest research is saying about this. Real-time insights coming up!";
-                } else {
-                    return "Interesting question! Let me tap into the latest information and give you a fresh take on this. I'll keep it real and data-driven.";
+        int end = prompt.length();
+        while (end > 0 && (Character.isWhitespace(prompt.charAt(end - 1)) || ".?!".indexOf(prompt.charAt(end - 1)) >= 0)) {
+            end--;
+        }
+        boolean pendingSpace = false;
+        for (int i = 0; i < end; i++) {
+            char c = prompt.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = key.charAt(key.length() - 1) != '|';
+            } else {
+                if (pendingSpace) {
+                    key.append(' ');
+                    pendingSpace = false;
                 }
-                
-            default:
-                return "I'm here to help with your research question. Could you provide more details about what specific aspect you'd like to explore?";
+                key.append(Character.toLowerCase(c));
+            }
         }
+        return key.toString();
     }
     
     /**
-     * Get model name for agent type
+     * Call a single provider and time it, surfacing failures as unchecked exceptions.
+     * The caller holds the agent's bulkhead permit.
      */
-    private String getModelName(String agentType) {
-        switch (agentType) {
-            case "CLAUDE": return "Claude-3.5-Sonnet";
-            case "CHATGPT": return "GPT-4";
-            case "GROK": return "Grok-2";
-            default: return "Unknown";
+    private AgentResponse invokeAgent(AgentType agentType, AgentProvider provider, String prompt, Consumer<String> onChunk) {
+        AgentStats stats = agentStats.get(agentType);
+        long started = stats.start();
+        try {
+            AgentReply reply = provider.generate(prompt, onChunk);
+            long latencyMillis = stats.succeeded(started);
+            return new AgentResponse(agentType, reply.content, reply.confidence, (int) latencyMillis, reply.model, null);
+        } catch (InterruptedException e) {
+            stats.cancelled(started);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + provider.getAgentType(), e);
+        } catch (RuntimeException e) {
+            stats.failed(started);
+            throw e;
+        } catch (Exception e) {
+            stats.failed(started);
+            throw new IllegalStateException(provider.getAgentType() + " failed: " + e.getMessage(), e);
         }
     }
     
+    /**
+     * One fan-out attempt; attempts interrupted by a winner or the deadline count as cancelled, not failed
+     */
+    private AgentReply invokeFanOutAttempt(AgentProvider provider, String prompt) throws Exception {
+        AgentType agentType = AgentType.valueOf(provider.getAgentType());
+        AgentBulkhead bulkhead = bulkheads.get(agentType);
+        bulkhead.acquire();
+        AgentStats stats = agentStats.get(agentType);
+        long started = stats.start();
+        try {
+            AgentReply reply = provider.generate(prompt, chunk -> { });
+            if (reply != null && reply.isGood()) {
+                stats.succeeded(started);
+            } else {
+                stats.failed(started);
+            }
+            return reply;
+        } catch (InterruptedException e) {
+            stats.cancelled(started);
+            throw e;
+        } catch (Exception e) {
+            stats.failed(started);
+            throw e;
+        } finally {
+            bulkhead.release();
+        }
+    }
+    
+    /**
+     * Dispatch an AUTO request to every provider and build the response from the fan-out result.
+     * The caller holds the AUTO bulkhead permit; each attempt takes its own agent's permit.
+     */
+    private AgentResponse applyFanOut(String userMessage, SendOptions options) {
+        ChatProperties.Auto auto = properties.getAuto();
+        AgentFanOut.Mode mode = AgentFanOut.Mode.valueOf(
+                (options.autoMode != null ? options.autoMode : auto.getMode()).toUpperCase());
+        Duration deadline = options.deadlineMs != null && options.deadlineMs > 0
+                ? Duration.ofMillis(options.deadlineMs)
+                : auto.getDeadline();
+        
+        AgentStats stats = agentStats.get(AgentType.AUTO);
+        long started = stats.start();
+        AgentFanOut.FanOutResult result = fanOut.dispatch(
+                providers.values(), userMessage, mode, deadline, auto.getHedgeDelay(), auto.getMaxAttempts());
+        if (result.winner == null) {
+            stats.failed(started);
+            throw new AgentTimeoutException("No agent answered within " + deadline.toMillis() + "ms");
+        }
+        
+        Map<String, Object> agents = new LinkedHashMap<>();
+        for (AgentFanOut.AgentOutcome outcome : result.outcomes) {
+            Map<String, Object> agent = new LinkedHashMap<>();
+            agent.put("status", outcome.status);
+            agent.put("latencyMs", outcome.latencyMs);
+            agent.put("attempts", outcome.attempts);
+            agents.put(outcome.agentType, agent);
+        }
+        Map<String, Object> extras = new LinkedHashMap<>();
+        extras.put("mode", mode.name());
+        extras.put("winner", result.winner.agentType);
+        extras.put("agents", agents);
+        int latencyMillis = (int) stats.succeeded(started);
+        
+        List<AgentFanOut.AgentOutcome> successes = result.successes();
+        if (mode == AgentFanOut.Mode.ENSEMBLE) {
+            String content = successes.stream()
+                    .map(o -> o.agentType + ": " + o.reply.content)
+                    .collect(Collectors.joining("\n\n"));
+            double confidence = successes.stream().mapToDouble(o -> o.reply.confidence).average().orElse(0.0);
+            return new AgentResponse(AgentType.AUTO, content, confidence, latencyMillis, "Ensemble", extras);
+        }
+        return new AgentResponse(AgentType.AUTO, result.winner.reply.content, result.winner.reply.confidence,
+                latencyMillis, result.winner.reply.model, extras);
+    }
+    
+    private static ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger(1);
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
     /**
      * Get chat history for a session
      */
-    public List<ChatMessageDto> getChatHistory(String sessionId) {
-        return messages.values().stream()
-                .filter(m -> sessionId.equals(m.sessionId))
-                .sorted(Comparator.comparing(m -> m.timestamp))
-                .collect(Collectors.toList());
+    public List<StoredChatMessage> getChatHistory(String sessionId) {
+        return historyStore.history(sessionId);
+    }
+    
+    /**
+     * Get a page of chat history for a session, starting after the given message id
+     */
+    public List<StoredChatMessage> getChatHistoryPage(String sessionId, Long afterId, int limit) {
+        return historyStore.page(sessionId, afterId != null ? afterId : 0L, Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
     }
     
     /**
@@ -163,15 +545,45 @@ public class InMemoryChatService {
     }
     
     /**
-     * Get agent status
+     * Get agent status from its rolling-window call statistics
      */
     public Map<String, Object> getAgentStatus(String agentType) {
+        AgentType type = AgentType.parse(agentType);
+        AgentStats stats = agentStats.get(type);
+        RollingLatencyHistogram.Snapshot snapshot = stats.snapshot();
+        double errorRate = snapshot.errorRate();
+        
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("p50", snapshot.p50Micros / 1000.0);
+        latency.put("p95", snapshot.p95Micros / 1000.0);
+        latency.put("p99", snapshot.p99Micros / 1000.0);
+        latency.put("max", snapshot.maxMicros / 1000.0);
+        
         Map<String, Object> status = new HashMap<>();
-        status.put("type", agentType.toUpperCase());
-        status.put("status", "online");
-        status.put("responseTime", "1.2s");
-        status.put("availability", 99.9);
-        status.put("lastActive", LocalDateTime.now().toString());
+        status.put("type", type.name());
+        status.put("status", snapshot.count > 0 && errorRate >= 0.5 ? "degraded" : "online");
+        status.put("responseTime", String.format("%.1fs", snapshot.p50Micros / 1_000_000.0));
+        status.put("latencyMs", latency);
+        status.put("calls", snapshot.count);
+        status.put("errorRate", errorRate);
+        status.put("availability", Math.round((1.0 - errorRate) * 1000) / 10.0);
+        status.put("inFlight", stats.getInFlight());
+        status.put("windowSeconds", stats.getWindow().toSeconds());
+        
+        AgentBulkhead bulkhead = bulkheads.get(type);
+        Map<String, Object> limits = new LinkedHashMap<>();
+        limits.put("maxConcurrent", bulkhead.getMaxConcurrent());
+        limits.put("maxWaiting", bulkhead.getMaxWaiting());
+        limits.put("maxWaitMs", bulkhead.getMaxWait().toMillis());
+        limits.put("active", bulkhead.getActive());
+        limits.put("waiting", bulkhead.getWaiting());
+        limits.put("rejectedQueueFull", bulkhead.getQueueFullRejections());
+        limits.put("rejectedWaitTimeout", bulkhead.getWaitTimeoutRejections());
+        status.put("bulkhead", limits);
+        long lastCompleted = stats.getLastCompletedMillis();
+        status.put("lastActive", lastCompleted > 0
+                ? LocalDateTime.ofInstant(Instant.ofEpochMilli(lastCompleted), ZoneId.systemDefault()).toString()
+                : null);
         return status;
     }
     
@@ -179,26 +591,28 @@ public class InMemoryChatService {
      * Generate research insights from conversation
      */
     public Map<String, Object> generateInsights(String sessionId) {
-        List<ChatMessageDto> sessionMessages = getChatHistory(sessionId);
+        SessionInsights sessionInsights = insightsBySession.get(sessionId);
+        InsightSnapshot snapshot = sessionInsights != null ? sessionInsights.snapshot() : new InsightSnapshot();
         
         Map<String, Object> insights = new HashMap<>();
-        insights.put("totalMessages", sessionMessages.size());
-        insights.put("userMessages", sessionMessages.stream().mapToLong(m -> "USER".equals(m.sender) ? 1 : 0).sum());
-        insights.put("aiMessages", sessionMessages.stream().mapToLong(m -> "AI".equals(m.sender) ? 1 : 0).sum());
-        
-        // Count agent usage
-        Map<String, Long> agentUsage = sessionMessages.stream()
-                .filter(m -> "AI".equals(m.sender))
-                .collect(Collectors.groupingBy(m -> m.agentType, Collectors.counting()));
-        insights.put("agentUsage", agentUsage);
-        
-        // Extract key topics (simple keyword extraction)
-        List<String> allContent = sessionMessages.stream()
-                .map(m -> m.content.toLowerCase())
-                .collect(Collectors.toList());
-        
-        List<String> keyTopics = extractKeyTopics(allContent);
+        insights.put("totalMessages", snapshot.totalMessages);
+        insights.put("userMessages", snapshot.userMessages);
+        insights.put("aiMessages", snapshot.aiMessages);
+        insights.put("agentUsage", snapshot.agentUsage);
+        
+        // Key topics are the research keywords seen so far, with how many messages mentioned each
+        List<String> keyTopics = new ArrayList<>();
+        Map<String, Long> topicCounts = new LinkedHashMap<>();
+        for (int i = 0; i < RESEARCH_KEYWORDS.length; i++) {
+            if (snapshot.keywordHits[i] > 0) {
+                if (keyTopics.size() < 10) {
+                    keyTopics.add(RESEARCH_KEYWORDS[i]);
+                }
+                topicCounts.put(RESEARCH_KEYWORDS[i], snapshot.keywordHits[i]);
+            }
+        }
         insights.put("keyTopics", keyTopics);
+        insights.put("topicCounts", topicCounts);
         
         insights.put("generatedAt", LocalDateTime.now().toString());
         
@@ -206,30 +620,194 @@ public class InMemoryChatService {
     }
     
     /**
-     * Simple keyword extraction for topics
+     * Mark which research keywords a message mentions
      */
-    private List<String> extractKeyTopics(List<String> content) {
-        String[] researchKeywords = {
-            "research", "study", "analysis", "evidence", "data", "methodology",
-            "hypothesis", "theory", "findings", "results", "conclusion", "literature"
-        };
+    private static void countKeywords(String content, long[] keywordHits) {
+        boolean[] matched = RESEARCH_KEYWORD_MATCHER.matchedPatterns(content);
+        for (int i = 0; i < matched.length; i++) {
+            if (matched[i]) {
+                keywordHits[i]++;
+            }
+        }
+    }
+    
+    /**
+     * Journal form of a stored message with its session; confidence is null rather than NaN so it stays valid JSON
+     */
+    private static class JournaledMessage {
+        public String sessionId;
+        public long id;
+        public String content;
+        public StoredChatMessage.Sender sender;
+        public AgentType agentType;
+        public StoredChatMessage.MessageType messageType;
+        public long epochMillis;
+        public Double confidence;
+        public int latencyMillis;
+        public String model;
+        public Map<String, Object> extras;
+        
+        static JournaledMessage of(String sessionId, StoredChatMessage message) {
+            JournaledMessage journaled = new JournaledMessage();
+            journaled.sessionId = sessionId;
+            journaled.id = message.id;
+            journaled.content = message.content;
+            journaled.sender = message.sender;
+            journaled.agentType = message.agentType;
+            journaled.messageType = message.messageType;
+            journaled.epochMillis = message.epochMillis;
+            journaled.confidence = Double.isNaN(message.confidence) ? null : message.confidence;
+            journaled.latencyMillis = message.latencyMillis;
+            journaled.model = message.model;
+            journaled.extras = message.extras;
+            return journaled;
+        }
+        
+        StoredChatMessage toMessage() {
+            return new StoredChatMessage(id, content, sender, agentType, messageType, epochMillis,
+                    confidence != null ? confidence : Double.NaN, latencyMillis, model, extras);
+        }
+    }
+    
+    /**
+     * Journal form of a drop from a session's history: every message up to and including throughId.
+     * Ids are never reused, even once every message that had them is gone.
+     */
+    private static class JournaledTruncation {
+        public String sessionId;
+        public long throughId;
+        
+        static JournaledTruncation of(String sessionId, long throughId) {
+            JournaledTruncation truncation = new JournaledTruncation();
+            truncation.sessionId = sessionId;
+            truncation.throughId = throughId;
+            return truncation;
+        }
+    }
+    
+    /**
+     * Per-request options for sendMessage
+     */
+    public static class SendOptions {
+        public String autoMode; // FIRST, ENSEMBLE (AUTO only)
+        public Long deadlineMs; // AUTO only
+        public boolean bypassCache;
+    }
+    
+    /**
+     * A generated reply before it is stored; also the value held by the response cache
+     */
+    private static class AgentResponse {
+        final AgentType agentType;
+        final String content;
+        final double confidence;
+        final int latencyMillis;
+        final String model;
+        final Map<String, Object> extras;
+        long startedAtMillis;
         
-        List<String> topics = new ArrayList<>();
-        String allText = String.join(" ", content);
+        AgentResponse(AgentType agentType, String content, double confidence, int latencyMillis, String model,
+                      Map<String, Object> extras) {
+            this.agentType = agentType;
+            this.content = content;
+            this.confidence = confidence;
+            this.latencyMillis = latencyMillis;
+            this.model = model;
+            this.extras = extras;
+        }
         
-        for (String keyword : researchKeywords) {
-            if (allText.contains(keyword)) {
-                topics.add(keyword);
+        AgentResponse asCacheHit(long startedAtMillis) {
+            Map<String, Object> hitExtras = new LinkedHashMap<>();
+            if (extras != null) {
+                hitExtras.putAll(extras);
             }
+            hitExtras.put("cached", true);
+            AgentResponse hit = new AgentResponse(agentType, content, confidence, 0, model, hitExtras);
+            hit.startedAtMillis = startedAtMillis;
+            return hit;
+        }
+    }
+    
+    /**
+     * Insight counters for a single session, updated on every append so reading them never rescans the history
+     */
+    private static class SessionInsights {
+        private long totalMessages;
+        private long userMessages;
+        private long aiMessages;
+        private final Map<String, Long> agentUsage = new HashMap<>();
+        private final long[] keywordHits = new long[RESEARCH_KEYWORDS.length];
+        
+        synchronized void record(StoredChatMessage message) {
+            totalMessages++;
+            if (message.sender == StoredChatMessage.Sender.USER) {
+                userMessages++;
+            } else {
+                aiMessages++;
+                agentUsage.merge(message.agentType.name(), 1L, Long::sum);
+            }
+            countKeywords(message.content, keywordHits);
         }
         
-        return topics.stream().distinct().limit(10).collect(Collectors.toList());
+        synchronized InsightSnapshot snapshot() {
+            InsightSnapshot snapshot = new InsightSnapshot();
+            snapshot.totalMessages = totalMessages;
+            snapshot.userMessages = userMessages;
+            snapshot.aiMessages = aiMessages;
+            snapshot.agentUsage = new HashMap<>(agentUsage);
+            snapshot.keywordHits = keywordHits.clone();
+            return snapshot;
+        }
+    }
+    
+    /**
+     * Point-in-time copy of a session's insight counters
+     */
+    private static class InsightSnapshot {
+        long totalMessages;
+        long userMessages;
+        long aiMessages;
+        Map<String, Long> agentUsage = new HashMap<>();
+        long[] keywordHits = new long[RESEARCH_KEYWORDS.length];
     }
     
     /**
      * DTO for chat messages
      */
     public static class ChatMessageDto {
+        
+        /**
+         * Expand a stored message into the JSON shape clients expect
+         */
+        public static ChatMessageDto from(StoredChatMessage message, String sessionId) {
+            ChatMessageDto dto = new ChatMessageDto();
+            dto.id = message.id;
+            dto.content = message.content;
+            dto.sessionId = sessionId;
+            dto.sender = message.sender.name();
+            dto.agentType = message.agentType != null ? message.agentType.name() : null;
+            dto.timestamp = LocalDateTime.ofInstant(Instant.ofEpochMilli(message.epochMillis), ZoneId.systemDefault());
+            dto.messageType = message.messageType.name();
+            dto.metadata = new HashMap<>();
+            if (message.sender == StoredChatMessage.Sender.AI) {
+                dto.metadata.put("confidence", message.confidence);
+                dto.metadata.put("processingTime", String.format("%.1fs", message.latencyMillis / 1000.0));
+                dto.metadata.put("model", message.model);
+            }
+            if (message.extras != null) {
+                dto.metadata.putAll(message.extras);
+            }
+            return dto;
+        }
+        
+        public static List<ChatMessageDto> from(List<StoredChatMessage> messages, String sessionId) {
+            List<ChatMessageDto> dtos = new ArrayList<>(messages.size());
+            for (StoredChatMessage message : messages) {
+                dtos.add(from(message, sessionId));
+            }
+            return dtos;
+        }
+        
         public Long id;
         public String content;
         public String sessionId;
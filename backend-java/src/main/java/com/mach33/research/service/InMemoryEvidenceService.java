@@ -1,55 +1,375 @@
 package com.mach33.research.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.mach33.research.config.EvidenceProperties;
+import com.mach33.research.util.KeywordMatcher;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Service
 public class InMemoryEvidenceService {
     
+    private static final KeywordMatcher EVIDENCE_PHRASES = KeywordMatcher.of(
+        "according to", "research shows", "studies indicate", "data reveals",
+        "evidence suggests", "findings show", "analysis demonstrates",
+        "statistics show", "survey results", "experiment showed"
+    );
+    
+    public static final int DEFAULT_SEARCH_LIMIT = 50;
+    public static final int MAX_SEARCH_LIMIT = 1000;
+    public static final int MAX_PAGE_SIZE = 1000;
+    private static final int IMPORT_BATCH_SIZE = 1000;
+    private static final int EXTRACT_CHUNK_CHARS = 256 * 1024;
+    private static final int RESCORE_LEAF_SIZE = 2048;
+    private static final String SENTENCE_DELIMITER = ". ";
+    private static final ObjectReader IMPORT_READER = new ObjectMapper().readerFor(BulkEvidenceLine.class);
+    private static final String JOURNAL_EVIDENCE = "evidence";
+    private static final String JOURNAL_DUPLICATE = "evidence.duplicate";
+    private static final String JOURNAL_SCORING_RULES = "evidence.scoring-rules";
+    private static final List<String> LINK_TYPES = List.of("SUPPORTS", "CONTRADICTS", "PARTIAL", "NEUTRAL");
+    
     private final Map<Long, EvidenceDto> evidence = new ConcurrentHashMap<>();
+    private final EvidenceSearchIndex searchIndex = new EvidenceSearchIndex();
+    private final Map<String, Map<Long, ClaimEvidence>> claimIndex = new ConcurrentHashMap<>();
+    private final Map<String, SessionAggregates> aggregates = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, NavigableSet<RankKey>>> reliabilityIndex = new ConcurrentHashMap<>();
     private final AtomicLong idGenerator = new AtomicLong(1);
+    private final NearDuplicateIndex duplicateIndex; // null when detection is disabled
+    private final boolean mergeDuplicates;
+    private final List<ScoringRules> scoringHistory = new CopyOnWriteArrayList<>(List.of(ScoringRules.defaults()));
+    private volatile ScoringRules scoringRules = scoringHistory.get(0);
+    private final ForkJoinPool rescorePool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    private volatile RescoreJob rescoreJob;
+    private final StateJournal journal;
+    
+    public InMemoryEvidenceService(EvidenceProperties properties, StateJournal journal) {
+        EvidenceProperties.Duplicates duplicates = properties.getDuplicates();
+        this.duplicateIndex = duplicates.isEnabled() ? new NearDuplicateIndex(duplicates.getThreshold()) : null;
+        this.mergeDuplicates = "MERGE".equalsIgnoreCase(duplicates.getMode());
+        this.journal = journal;
+        journal.register(JOURNAL_EVIDENCE, EvidenceDto.class, item -> String.valueOf(item.id), this::restoreEvidence);
+        journal.register(JOURNAL_DUPLICATE, DuplicateRecord.class, this::restoreDuplicate);
+        journal.register(JOURNAL_SCORING_RULES, ScoringRules.class, this::restoreScoringRules);
+    }
     
     /**
-     * Create a new evidence item
+     * Create a new evidence item.
+     * A near-duplicate of earlier evidence in the session is stored with duplicateOf set (FLAG mode),
+     * or folded into the earlier item, which is returned instead (MERGE mode).
      */
     public EvidenceDto createEvidence(String content, String sessionId, String type, String source) {
-        EvidenceDto evidenceItem = new EvidenceDto();
+        long[] sequence = {0};
+        EvidenceDto stored = store(newEvidence(content, sessionId, type, source, List.of()), signatureOf(content), sequence);
+        journal.awaitDurable(sequence[0]);
+        return stored;
+    }
+    
+    private int[] signatureOf(String content) {
+        return duplicateIndex != null && content != null ? NearDuplicateIndex.signature(content) : null;
+    }
+    
+    /**
+     * Check a new item against the session's earlier evidence, then insert, flag or merge it.
+     * A new canonical item is inserted before it is indexed for duplicate detection, so an item whose
+     * journal append is refused can never be matched. sequence[0] is set to the journal sequence of the
+     * last record written for it.
+     */
+    private EvidenceDto store(EvidenceDto evidenceItem, int[] signature, long[] sequence) {
+        if (signature == null) {
+            sequence[0] = insert(evidenceItem);
+            return evidenceItem;
+        }
         evidenceItem.id = idGenerator.getAndIncrement();
+        NearDuplicateIndex.Match match = duplicateIndex.register(evidenceItem.sessionId, evidenceItem.id, signature,
+                () -> sequence[0] = insert(evidenceItem));
+        if (match == null) {
+            return evidenceItem;
+        }
+        DuplicateMember member = new DuplicateMember();
+        member.source = evidenceItem.source;
+        member.similarity = match.similarity;
+        if (mergeDuplicates) {
+            EvidenceDto merged = evidence.computeIfPresent(match.canonicalId, (id, current) -> {
+                EvidenceDto next = current.copy();
+                next.mergedCount = current.mergedCount + 1;
+                if (evidenceItem.source != null && !current.mergedSources.contains(evidenceItem.source)) {
+                    next.mergedSources = append(current.mergedSources, List.of(evidenceItem.source));
+                }
+                journal.append(JOURNAL_EVIDENCE, next);
+                return next;
+            });
+            // Canonical items are stored before they can be matched and never removed; flag this one if not
+            if (merged != null) {
+                member.merged = true;
+                sequence[0] = recordDuplicate(evidenceItem.sessionId, match.canonicalId, member);
+                return merged;
+            }
+        }
+        evidenceItem.duplicateOf = match.canonicalId;
+        insert(evidenceItem);
+        member.id = evidenceItem.id;
+        sequence[0] = recordDuplicate(evidenceItem.sessionId, match.canonicalId, member);
+        return evidenceItem;
+    }
+    
+    private long recordDuplicate(String sessionId, long canonicalId, DuplicateMember member) {
+        DuplicateRecord record = new DuplicateRecord();
+        record.sessionId = sessionId;
+        record.canonicalId = canonicalId;
+        record.member = member;
+        long sequence = journal.append(JOURNAL_DUPLICATE, record);
+        duplicateIndex.recordDuplicate(sessionId, canonicalId, member);
+        return sequence;
+    }
+    
+    /**
+     * Build an unsaved evidence item with its initial reliability score.
+     * Rejects a missing session or type here, before anything is stored or journaled.
+     */
+    private EvidenceDto newEvidence(String content, String sessionId, String type, String source, List<String> tags) {
+        if (sessionId == null || sessionId.isBlank()) {
+            throw new IllegalArgumentException("sessionId is required");
+        }
+        if (type == null || type.isBlank()) {
+            throw new IllegalArgumentException("type is required");
+        }
+        EvidenceDto evidenceItem = new EvidenceDto();
         evidenceItem.content = content;
         evidenceItem.sessionId = sessionId;
         evidenceItem.type = type; // PRIMARY, SECONDARY, TERTIARY
         evidenceItem.source = source;
-        evidenceItem.reliabilityScore = calculateInitialReliability(type, source);
+        ScoringRules rules = scoringRules;
+        evidenceItem.reliabilityScore = rules.score(type, source);
+        evidenceItem.scoringVersion = rules.version;
         evidenceItem.createdAt = LocalDateTime.now();
-        evidenceItem.linkedClaims = new ArrayList<>();
-        evidenceItem.tags = new ArrayList<>();
+        evidenceItem.linkedClaims = List.of();
+        evidenceItem.tags = tags;
+        evidenceItem.mergedSources = List.of();
         evidenceItem.status = "ACTIVE";
-        
-        evidence.put(evidenceItem.id, evidenceItem);
         return evidenceItem;
     }
     
     /**
-     * Link evidence to a claim/statement
+     * Assign an id unless one was reserved, and store the item with its aggregates and search postings.
+     * Journaled before it is published, so later changes to the item follow it in the log, and indexed
+     * before it is published, so a rescore that finds it in the map reranks the entry it will keep.
+     * Readers skip index entries whose item is not in the map yet.
+     * Returns the journal sequence of the last record written for the item.
      */
-    public EvidenceDto linkToClaim(Long evidenceId, Long claimId, String linkType) {
-        EvidenceDto evidenceItem = evidence.get(evidenceId);
-        if (evidenceItem == null) {
-            throw new RuntimeException("Evidence not found with id: " + evidenceId);
+    private long insert(EvidenceDto evidenceItem) {
+        if (evidenceItem.id == null) {
+            evidenceItem.id = idGenerator.getAndIncrement();
+        }
+        long sequence = journal.append(JOURNAL_EVIDENCE, evidenceItem);
+        aggregatesFor(evidenceItem.sessionId).added(evidenceItem);
+        typeIndex(evidenceItem.sessionId, evidenceItem.type).add(RankKey.of(evidenceItem));
+        searchIndex.add(evidenceItem.id, evidenceItem.sessionId, evidenceItem.content, evidenceItem.source, evidenceItem.tags);
+        evidence.put(evidenceItem.id, evidenceItem);
+        // Rules installed after newEvidence scored the item: the job rescoring for them may have listed
+        // ids before the put, so catch up here. Read after the put, so either this read sees the new
+        // rules or the job that applies them lists the item.
+        ScoringRules rules = scoringRules;
+        if (evidenceItem.scoringVersion < rules.version) {
+            long[] rescored = {sequence};
+            evidence.computeIfPresent(evidenceItem.id, (id, current) -> {
+                if (current.reliabilityReason != null || current.lastVerifiedAt != null
+                        || current.scoringVersion >= rules.version) {
+                    return current;
+                }
+                EvidenceDto next = rescoredCopy(current, rules);
+                rescored[0] = journal.append(JOURNAL_EVIDENCE, next);
+                aggregatesFor(current.sessionId).reliabilitySum.add(next.reliabilityScore - current.reliabilityScore);
+                rerank(current, next);
+                return next;
+            });
+            sequence = rescored[0];
+        }
+        return sequence;
+    }
+    
+    /**
+     * Replay a journaled snapshot: insert the item, or apply what changed since the stored version
+     * to the aggregates and indexes
+     */
+    private void restoreEvidence(EvidenceDto item) {
+        item.linkedClaims = item.linkedClaims != null ? Collections.unmodifiableList(item.linkedClaims) : List.of();
+        item.tags = item.tags != null ? Collections.unmodifiableList(item.tags) : List.of();
+        item.mergedSources = item.mergedSources != null ? Collections.unmodifiableList(item.mergedSources) : List.of();
+        idGenerator.accumulateAndGet(item.id + 1, Math::max);
+        EvidenceDto current = evidence.put(item.id, item);
+        int knownLinks = 0;
+        if (current == null) {
+            aggregatesFor(item.sessionId).added(item);
+            typeIndex(item.sessionId, item.type).add(RankKey.of(item));
+            searchIndex.add(item.id, item.sessionId, item.content, item.source, item.tags);
+            if (duplicateIndex != null && item.duplicateOf == null && item.content != null) {
+                duplicateIndex.restore(item.sessionId, item.id, NearDuplicateIndex.signature(item.content));
+            }
+        } else {
+            aggregatesFor(item.sessionId).reliabilitySum.add(item.reliabilityScore - current.reliabilityScore);
+            rerank(current, item);
+            if (item.tags.size() > current.tags.size()) {
+                searchIndex.addTags(item.id, item.sessionId, item.tags.subList(current.tags.size(), item.tags.size()));
+            }
+            knownLinks = current.linkedClaims.size();
+        }
+        if (knownLinks == 0 && !item.linkedClaims.isEmpty()) {
+            aggregatesFor(item.sessionId).linked.increment();
         }
+        for (ClaimLink link : item.linkedClaims.subList(knownLinks, item.linkedClaims.size())) {
+            claimIndex.computeIfAbsent(item.sessionId, s -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(link.claimId, c -> new ClaimEvidence())
+                    .add(RankKey.of(item), link);
+        }
+    }
+    
+    private void restoreDuplicate(DuplicateRecord record) {
+        if (duplicateIndex != null) {
+            duplicateIndex.recordDuplicate(record.sessionId, record.canonicalId, record.member);
+        }
+    }
+    
+    /**
+     * Import evidence from NDJSON, one item per line, reading incrementally.
+     * Each batch is parsed, scored and fingerprinted for duplicate detection in parallel, then
+     * inserted in line order; per-line
+     * results for the batch are handed to onBatch before the next batch is read.
+     */
+    public BulkImportSummary importEvidence(BufferedReader ndjson, Consumer<List<BulkLineResult>> onBatch) throws IOException {
+        long started = System.nanoTime();
+        BulkImportSummary summary = new BulkImportSummary();
+        List<String> lines = new ArrayList<>(IMPORT_BATCH_SIZE);
+        long firstLine = 1;
+        long lineNumber = 0;
+        String line;
+        while ((line = ndjson.readLine()) != null) {
+            lineNumber++;
+            if (lines.isEmpty()) {
+                firstLine = lineNumber;
+            }
+            lines.add(line);
+            if (lines.size() == IMPORT_BATCH_SIZE) {
+                onBatch.accept(importBatch(lines, firstLine, summary));
+                lines.clear();
+            }
+        }
+        if (!lines.isEmpty()) {
+            onBatch.accept(importBatch(lines, firstLine, summary));
+        }
+        
+        summary.elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        summary.itemsPerSecond = summary.imported / Math.max(1e-9, (System.nanoTime() - started) / 1e9);
+        return summary;
+    }
+    
+    private List<BulkLineResult> importBatch(List<String> lines, long firstLine, BulkImportSummary summary) {
+        List<Object> parsed = IntStream.range(0, lines.size()).parallel()
+                .mapToObj(i -> parseImportLine(lines.get(i)))
+                .collect(Collectors.toList());
         
+        List<BulkLineResult> results = new ArrayList<>(lines.size());
+        long[] sequence = {0};
+        for (int i = 0; i < parsed.size(); i++) {
+            Object item = parsed.get(i);
+            if (item == null) {
+                continue; // blank line
+            }
+            BulkLineResult result = new BulkLineResult();
+            result.line = firstLine + i;
+            if (item instanceof PendingEvidence pending) {
+                EvidenceDto stored = store(pending.item(), pending.signature(), sequence);
+                result.id = stored.id;
+                result.duplicateOf = stored != pending.item() ? stored.id : stored.duplicateOf;
+                if (result.duplicateOf != null) {
+                    summary.duplicates++;
+                }
+                summary.imported++;
+            } else {
+                result.error = (String) item;
+                summary.failed++;
+            }
+            results.add(result);
+        }
+        // One wait per batch: its records share the group commits
+        journal.awaitDurable(sequence[0]);
+        return results;
+    }
+    
+    /**
+     * A scored, unsaved item with its duplicate signature, an error message, or null for a blank line
+     */
+    private Object parseImportLine(String line) {
+        if (line.isBlank()) {
+            return null;
+        }
+        try {
+            BulkEvidenceLine request = IMPORT_READER.readValue(line);
+            if (request.content == null || request.sessionId == null || request.type == null) {
+                return "content, sessionId and type are required";
+            }
+            List<String> tags = request.tags != null ? List.copyOf(request.tags) : List.of();
+            EvidenceDto item = newEvidence(request.content, request.sessionId, request.type.toUpperCase(), request.source, tags);
+            return new PendingEvidence(item, signatureOf(request.content));
+        } catch (IOException e) {
+            return "Invalid JSON: " + (e instanceof JsonProcessingException json ? json.getOriginalMessage() : e.getMessage());
+        } catch (RuntimeException e) {
+            return "Invalid item: " + e.getMessage();
+        }
+    }
+    
+    /**
+     * Link evidence to a claim/statement. The link type is matched case-insensitively and stored uppercase;
+     * anything other than SUPPORTS, CONTRADICTS, PARTIAL or NEUTRAL is rejected.
+     */
+    public EvidenceDto linkToClaim(Long evidenceId, Long claimId, String linkType) {
+        String normalizedType = linkType != null ? linkType.toUpperCase(Locale.ROOT) : "";
+        if (!LINK_TYPES.contains(normalizedType)) {
+            throw new IllegalArgumentException("linkType must be one of " + LINK_TYPES + ", got " + linkType);
+        }
         ClaimLink link = new ClaimLink();
         link.claimId = claimId;
-        link.linkType = linkType; // SUPPORTS, CONTRADICTS, NEUTRAL, PARTIAL
-        link.strength = calculateLinkStrength(evidenceItem, linkType);
+        link.linkType = normalizedType;
         link.createdAt = LocalDateTime.now();
         
-        evidenceItem.linkedClaims.add(link);
+        long[] sequence = {0};
+        EvidenceDto evidenceItem = evidence.computeIfPresent(evidenceId, (id, current) -> {
+            link.strength = calculateLinkStrength(current, normalizedType);
+            EvidenceDto next = current.copy();
+            next.linkedClaims = append(current.linkedClaims, List.of(link));
+            sequence[0] = journal.append(JOURNAL_EVIDENCE, next);
+            if (current.linkedClaims.isEmpty()) {
+                aggregatesFor(current.sessionId).linked.increment();
+            }
+            // Indexed inside the swap so a concurrent reliability change cannot leave a stale rank
+            claimIndex.computeIfAbsent(current.sessionId, s -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(claimId, c -> new ClaimEvidence())
+                    .add(RankKey.of(current), link);
+            return next;
+        });
+        if (evidenceItem == null) {
+            throw new RuntimeException("Evidence not found with id: " + evidenceId);
+        }
+        journal.awaitDurable(sequence[0]);
         return evidenceItem;
     }
     
@@ -57,15 +377,22 @@ public class InMemoryEvidenceService {
      * Update reliability score based on verification
      */
     public EvidenceDto updateReliability(Long evidenceId, double newScore, String reason) {
-        EvidenceDto evidenceItem = evidence.get(evidenceId);
+        long[] sequence = {0};
+        EvidenceDto evidenceItem = evidence.computeIfPresent(evidenceId, (id, current) -> {
+            EvidenceDto next = current.copy();
+            next.reliabilityScore = Math.max(0.0, Math.min(1.0, newScore));
+            next.reliabilityReason = reason;
+            next.lastVerifiedAt = LocalDateTime.now();
+            sequence[0] = journal.append(JOURNAL_EVIDENCE, next);
+            aggregatesFor(current.sessionId).reliabilitySum.add(next.reliabilityScore - current.reliabilityScore);
+            rerank(current, next);
+            return next;
+        });
         if (evidenceItem == null) {
             throw new RuntimeException("Evidence not found with id: " + evidenceId);
         }
         
-        evidenceItem.reliabilityScore = Math.max(0.0, Math.min(1.0, newScore));
-        evidenceItem.reliabilityReason = reason;
-        evidenceItem.lastVerifiedAt = LocalDateTime.now();
-        
+        journal.awaitDurable(sequence[0]);
         return evidenceItem;
     }
     
@@ -73,42 +400,239 @@ public class InMemoryEvidenceService {
      * Add tags to evidence
      */
     public EvidenceDto addTags(Long evidenceId, List<String> tags) {
-        EvidenceDto evidenceItem = evidence.get(evidenceId);
+        long[] sequence = {0};
+        EvidenceDto evidenceItem = evidence.computeIfPresent(evidenceId, (id, current) -> {
+            EvidenceDto next = current.copy();
+            next.tags = append(current.tags, tags);
+            sequence[0] = journal.append(JOURNAL_EVIDENCE, next);
+            return next;
+        });
         if (evidenceItem == null) {
             throw new RuntimeException("Evidence not found with id: " + evidenceId);
         }
         
-        evidenceItem.tags.addAll(tags);
+        searchIndex.addTags(evidenceItem.id, evidenceItem.sessionId, tags);
+        journal.awaitDurable(sequence[0]);
         return evidenceItem;
     }
     
+    /**
+     * Current rules for initial reliability scores
+     */
+    public ScoringRules getScoringRules() {
+        return scoringRules;
+    }
+    
+    /**
+     * Every installed version of the scoring rules, oldest first
+     */
+    public List<ScoringRules> getScoringHistory() {
+        return new ArrayList<>(scoringHistory);
+    }
+    
+    /**
+     * Install tuned scoring rules as the next version; new evidence is scored with them immediately.
+     * Existing evidence keeps its scores until a rescoring job reaches it.
+     */
+    public ScoringRules installScoringRules(ScoringRules rules) {
+        ScoringRules installed;
+        long sequence;
+        synchronized (this) {
+            installed = rules.install(scoringRules.version + 1);
+            sequence = journal.append(JOURNAL_SCORING_RULES, installed);
+            scoringHistory.add(installed);
+            scoringRules = installed;
+        }
+        journal.awaitDurable(sequence);
+        return installed;
+    }
+    
+    /**
+     * Reinstall a journaled rules version with its original creation time
+     */
+    private void restoreScoringRules(ScoringRules rules) {
+        ScoringRules installed = rules.install(rules.version);
+        installed.createdAt = rules.createdAt;
+        if (installed.version > scoringRules.version) {
+            scoringHistory.add(installed);
+            scoringRules = installed;
+        }
+    }
+    
+    /**
+     * Start rescoring all evidence with the current rules in the background, or return the job already
+     * doing so. A job still running for an older version is cancelled; the new job covers its items.
+     */
+    public synchronized RescoreStatus startRescoring() {
+        RescoreJob running = rescoreJob;
+        ScoringRules rules = scoringRules;
+        if (running != null && running.isRunning()) {
+            if (running.rules.version == rules.version) {
+                return running.status();
+            }
+            running.cancelled = true;
+        }
+        RescoreJob job = new RescoreJob(rules, evidence.keySet().stream().mapToLong(Long::longValue).toArray());
+        rescoreJob = job;
+        rescorePool.execute(job::run);
+        return job.status();
+    }
+    
+    /**
+     * Progress of the latest rescoring job; state is IDLE if none has run
+     */
+    public RescoreStatus getRescoreStatus() {
+        RescoreJob job = rescoreJob;
+        if (job != null) {
+            return job.status();
+        }
+        RescoreStatus status = new RescoreStatus();
+        status.version = scoringRules.version;
+        status.state = "IDLE";
+        return status;
+    }
+    
+    /**
+     * Rescore one item unless it was verified by hand or already uses these rules. The swap is per item,
+     * so readers and writers of other items never wait on the job.
+     */
+    private void rescore(long evidenceId, RescoreJob job) {
+        evidence.computeIfPresent(evidenceId, (id, current) -> {
+            // reliabilityReason and lastVerifiedAt are only set by updateReliability
+            if (current.reliabilityReason != null || current.lastVerifiedAt != null) {
+                job.skippedManual.increment();
+                return current;
+            }
+            if (current.scoringVersion >= job.rules.version) {
+                job.unchanged.increment();
+                return current;
+            }
+            EvidenceDto next = rescoredCopy(current, job.rules);
+            // Not awaited: a crash loses at most the last commit window of rescores, and rescoring again redoes them
+            journal.append(JOURNAL_EVIDENCE, next);
+            aggregatesFor(current.sessionId).reliabilitySum.add(next.reliabilityScore - current.reliabilityScore);
+            rerank(current, next);
+            job.rescored.increment();
+            return next;
+        });
+        job.processed.increment();
+    }
+    
+    private static EvidenceDto rescoredCopy(EvidenceDto current, ScoringRules rules) {
+        EvidenceDto next = current.copy();
+        next.reliabilityScore = rules.score(current.type, current.source);
+        next.scoringVersion = rules.version;
+        return next;
+    }
+    
     /**
      * Extract evidence from text using simple patterns
      */
     public List<String> extractPotentialEvidence(String text) {
         List<String> potentialEvidence = new ArrayList<>();
+        for (ExtractedSentence sentence : scanSentences(text, 0, text.length(), 0)) {
+            potentialEvidence.add(sentence.text);
+        }
+        return potentialEvidence;
+    }
+    
+    /**
+     * Streaming form of extractPotentialEvidence for large documents.
+     * Reads the text in chunks; complete sentences of each chunk are scanned in parallel while the
+     * next chunk is read, and a sentence cut by a chunk boundary is carried into the next chunk.
+     * Matches are handed to onMatches in document order, with offsets into the whole text.
+     */
+    public ExtractionSummary extractEvidence(Reader text, Consumer<List<ExtractedSentence>> onMatches) throws IOException {
+        long started = System.nanoTime();
+        ExtractionSummary summary = new ExtractionSummary();
+        int maxInFlight = Math.max(2, 2 * Runtime.getRuntime().availableProcessors());
+        Deque<CompletableFuture<List<ExtractedSentence>>> inFlight = new ArrayDeque<>();
+        StringBuilder pending = new StringBuilder(EXTRACT_CHUNK_CHARS * 2);
+        char[] buffer = new char[EXTRACT_CHUNK_CHARS];
+        long pendingOffset = 0;
+        int searchFrom = 0; // pending holds no delimiter starting before this index
+        int read;
         
-        // Simple pattern matching for evidence indicators
-        String[] evidencePatterns = {
-            "according to", "research shows", "studies indicate", "data reveals",
-            "evidence suggests", "findings show", "analysis demonstrates",
-            "statistics show", "survey results", "experiment showed"
-        };
-        
-        String lowerText = text.toLowerCase();
-        String[] sentences = text.split("\\. ");
+        while ((read = text.read(buffer)) != -1) {
+            pending.append(buffer, 0, read);
+            summary.characters += read;
+            if (pending.length() < EXTRACT_CHUNK_CHARS) {
+                continue;
+            }
+            int boundary = lastDelimiter(pending, searchFrom);
+            if (boundary < 0) {
+                searchFrom = Math.max(0, pending.length() - 1);
+                continue; // one long sentence so far; keep accumulating
+            }
+            searchFrom = 0;
+            int complete = boundary + SENTENCE_DELIMITER.length();
+            String chunk = pending.substring(0, complete);
+            long chunkOffset = pendingOffset;
+            pending.delete(0, complete);
+            pendingOffset += complete;
+            
+            inFlight.add(CompletableFuture.supplyAsync(
+                    () -> scanSentences(chunk, 0, chunk.length(), chunkOffset), ForkJoinPool.commonPool()));
+            while (inFlight.size() >= maxInFlight) {
+                emit(inFlight.poll().join(), summary, onMatches);
+            }
+        }
+        String rest = pending.toString();
+        long restOffset = pendingOffset;
+        inFlight.add(CompletableFuture.completedFuture(scanSentences(rest, 0, rest.length(), restOffset)));
+        while (!inFlight.isEmpty()) {
+            emit(inFlight.poll().join(), summary, onMatches);
+        }
         
-        for (String sentence : sentences) {
-            String lowerSentence = sentence.toLowerCase();
-            for (String pattern : evidencePatterns) {
-                if (lowerSentence.contains(pattern)) {
-                    potentialEvidence.add(sentence.trim());
-                    break;
+        summary.elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        return summary;
+    }
+    
+    private static int lastDelimiter(CharSequence text, int from) {
+        for (int i = text.length() - SENTENCE_DELIMITER.length(); i >= from; i--) {
+            if (text.charAt(i) == '.' && text.charAt(i + 1) == ' ') {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private static void emit(List<ExtractedSentence> matches, ExtractionSummary summary,
+                             Consumer<List<ExtractedSentence>> onMatches) {
+        if (!matches.isEmpty()) {
+            summary.matches += matches.size();
+            onMatches.accept(matches);
+        }
+    }
+    
+    /**
+     * Sentences of text[start, end) split on ". " that contain an evidence phrase, trimmed;
+     * only matching sentences are copied out of the text
+     */
+    private static List<ExtractedSentence> scanSentences(String text, int start, int end, long baseOffset) {
+        List<ExtractedSentence> matches = new ArrayList<>();
+        int sentenceStart = start;
+        while (sentenceStart <= end) {
+            int delimiter = text.indexOf(SENTENCE_DELIMITER, sentenceStart);
+            int sentenceEnd = delimiter < 0 || delimiter + SENTENCE_DELIMITER.length() > end ? end : delimiter;
+            if (EVIDENCE_PHRASES.containsAny(text, sentenceStart, sentenceEnd)) {
+                int from = sentenceStart;
+                int to = sentenceEnd;
+                while (from < to && text.charAt(from) <= ' ') {
+                    from++;
+                }
+                while (to > from && text.charAt(to - 1) <= ' ') {
+                    to--;
                 }
+                ExtractedSentence sentence = new ExtractedSentence();
+                sentence.start = baseOffset + from;
+                sentence.end = baseOffset + to;
+                sentence.text = text.substring(from, to);
+                matches.add(sentence);
             }
+            sentenceStart = sentenceEnd + SENTENCE_DELIMITER.length();
         }
-        
-        return potentialEvidence;
+        return matches;
     }
     
     /**
@@ -122,96 +646,163 @@ public class InMemoryEvidenceService {
     }
     
     /**
-     * Get evidence by type
+     * Get evidence by type, most reliable first
      */
     public List<EvidenceDto> getEvidenceByType(String sessionId, String type) {
-        return evidence.values().stream()
-                .filter(e -> sessionId.equals(e.sessionId) && type.equals(e.type))
-                .sorted((a, b) -> b.reliabilityScore.compareTo(a.reliabilityScore))
-                .collect(Collectors.toList());
+        return getEvidenceByType(sessionId, type, null, null).items;
     }
     
     /**
-     * Get evidence linked to a specific claim
+     * Get a page of evidence by type, most reliable first, continuing after the cursor if given
+     */
+    public EvidencePage getEvidenceByType(String sessionId, String type, Integer limit, String cursor) {
+        Map<String, NavigableSet<RankKey>> sessionTypes = reliabilityIndex.get(sessionId);
+        NavigableSet<RankKey> ranked = sessionTypes != null ? sessionTypes.get(type) : null;
+        return page(ranked, limit, cursor);
+    }
+    
+    /**
+     * Get evidence linked to a specific claim, most reliable first
      */
     public List<EvidenceDto> getEvidenceForClaim(String sessionId, Long claimId) {
-        return evidence.values().stream()
-                .filter(e -> sessionId.equals(e.sessionId))
-                .filter(e -> e.linkedClaims.stream().anyMatch(link -> claimId.equals(link.claimId)))
-                .sorted((a, b) -> b.reliabilityScore.compareTo(a.reliabilityScore))
-                .collect(Collectors.toList());
+        return getEvidenceForClaim(sessionId, claimId, null, null).items;
+    }
+    
+    public EvidencePage getEvidenceForClaim(String sessionId, Long claimId, Integer limit, String cursor) {
+        ClaimEvidence claim = claimEvidence(sessionId, claimId);
+        return page(claim != null ? claim.ranked : null, limit, cursor);
     }
     
     /**
-     * Search evidence by content
+     * Walk a reliability-ordered index from the cursor; costs O(limit), not O(index size)
      */
-    public List<EvidenceDto> searchEvidence(String sessionId, String searchTerm) {
-        String lowerSearchTerm = searchTerm.toLowerCase();
-        return evidence.values().stream()
-                .filter(e -> sessionId.equals(e.sessionId))
-                .filter(e -> 
-                    e.content.toLowerCase().contains(lowerSearchTerm) ||
-                    e.source.toLowerCase().contains(lowerSearchTerm) ||
-                    e.tags.stream().anyMatch(tag -> tag.toLowerCase().contains(lowerSearchTerm))
-                )
-                .sorted((a, b) -> b.reliabilityScore.compareTo(a.reliabilityScore))
-                .collect(Collectors.toList());
+    private EvidencePage page(NavigableSet<RankKey> ranked, Integer limit, String cursor) {
+        EvidencePage page = new EvidencePage();
+        page.items = new ArrayList<>();
+        if (ranked == null) {
+            return page;
+        }
+        NavigableSet<RankKey> view = cursor != null ? ranked.tailSet(RankKey.parse(cursor), false) : ranked;
+        int max = limit != null ? Math.max(1, Math.min(limit, MAX_PAGE_SIZE)) : Integer.MAX_VALUE;
+        RankKey last = null;
+        for (RankKey key : view) {
+            if (page.items.size() == max) {
+                page.nextCursor = last.toCursor();
+                break;
+            }
+            EvidenceDto item = evidence.get(key.id);
+            if (item != null) {
+                page.items.add(item);
+                last = key;
+            }
+        }
+        return page;
+    }
+    
+    private NavigableSet<RankKey> typeIndex(String sessionId, String type) {
+        return reliabilityIndex.computeIfAbsent(sessionId, s -> new ConcurrentHashMap<>())
+                .computeIfAbsent(type, t -> new ConcurrentSkipListSet<>());
     }
     
     /**
-     * Get evidence statistics
+     * Move an item to its new reliability position in the type and claim indexes
      */
-    public EvidenceStatistics getEvidenceStatistics(String sessionId) {
-        List<EvidenceDto> sessionEvidence = getEvidenceBySession(sessionId);
-        
-        EvidenceStatistics stats = new EvidenceStatistics();
-        stats.totalEvidence = sessionEvidence.size();
-        stats.primaryCount = sessionEvidence.stream().mapToInt(e -> "PRIMARY".equals(e.type) ? 1 : 0).sum();
-        stats.secondaryCount = sessionEvidence.stream().mapToInt(e -> "SECONDARY".equals(e.type) ? 1 : 0).sum();
-        stats.tertiaryCount = sessionEvidence.stream().mapToInt(e -> "TERTIARY".equals(e.type) ? 1 : 0).sum();
-        stats.averageReliability = sessionEvidence.stream()
-                .mapToDouble(e -> e.reliabilityScore)
-                .average()
-                .orElse(0.0);
-        stats.linkedCount = sessionEvidence.stream()
-                .mapToInt(e -> e.linkedClaims.isEmpty() ? 0 : 1)
-                .sum();
-        
-        return stats;
+    private void rerank(EvidenceDto current, EvidenceDto next) {
+        RankKey before = RankKey.of(current);
+        RankKey after = RankKey.of(next);
+        if (before.compareTo(after) == 0) {
+            return;
+        }
+        NavigableSet<RankKey> byType = typeIndex(current.sessionId, current.type);
+        byType.remove(before);
+        byType.add(after);
+        Set<Long> claims = new HashSet<>();
+        for (ClaimLink link : current.linkedClaims) {
+            if (claims.add(link.claimId)) {
+                ClaimEvidence claim = claimEvidence(current.sessionId, link.claimId);
+                if (claim != null) {
+                    claim.rerank(before, after);
+                }
+            }
+        }
     }
     
     /**
-     * Calculate initial reliability score based on type and source
+     * Get link counts and summed strength per link type for a claim
      */
-    private double calculateInitialReliability(String type, String source) {
-        double baseScore = 0.5;
-        
-        // Adjust based on evidence type
-        switch (type.toUpperCase()) {
-            case "PRIMARY":
-                baseScore = 0.8;
-                break;
-            case "SECONDARY":
-                baseScore = 0.6;
-                break;
-            case "TERTIARY":
-                baseScore = 0.4;
-                break;
+    public ClaimSupport getClaimSupport(String sessionId, Long claimId) {
+        ClaimEvidence claim = claimEvidence(sessionId, claimId);
+        return claim != null ? claim.summary(claimId) : ClaimEvidence.emptySummary(claimId);
+    }
+    
+    private ClaimEvidence claimEvidence(String sessionId, Long claimId) {
+        Map<Long, ClaimEvidence> sessionClaims = claimIndex.get(sessionId);
+        return sessionClaims != null ? sessionClaims.get(claimId) : null;
+    }
+    
+    /**
+     * Search evidence by content, source and tags.
+     * Every query word must match (the last one as a prefix); results are ranked by BM25 relevance
+     * weighted by reliability. A prefix matching very many words is expanded to the most common of them,
+     * and the results are marked truncated.
+     */
+    public SearchResults searchEvidence(String sessionId, String searchTerm, int limit) {
+        EvidenceSearchIndex.Result found = searchIndex.search(sessionId, searchTerm,
+                Math.min(limit, MAX_SEARCH_LIMIT), this::reliabilityOf);
+        SearchResults results = new SearchResults();
+        results.items = new ArrayList<>(found.hits.size());
+        results.truncated = found.truncated;
+        for (EvidenceSearchIndex.Hit hit : found.hits) {
+            EvidenceDto item = evidence.get(hit.id);
+            if (item != null) {
+                results.items.add(item);
+            }
         }
-        
-        // Adjust based on source indicators
-        String lowerSource = source.toLowerCase();
-        if (lowerSource.contains("peer-reviewed") || lowerSource.contains("journal")) {
-            baseScore += 0.15;
-        } else if (lowerSource.contains("government") || lowerSource.contains("official")) {
-            baseScore += 0.1;
-        } else if (lowerSource.contains("news") || lowerSource.contains("media")) {
-            baseScore += 0.05;
-        } else if (lowerSource.contains("blog") || lowerSource.contains("opinion")) {
-            baseScore -= 0.1;
+        return results;
+    }
+    
+    /**
+     * Near-duplicate clusters for a session, largest first; empty when detection is disabled
+     */
+    public List<DuplicateCluster> getDuplicateClusters(String sessionId) {
+        return duplicateIndex != null ? duplicateIndex.clusters(sessionId) : new ArrayList<>();
+    }
+    
+    private double reliabilityOf(long evidenceId) {
+        EvidenceDto item = evidence.get(evidenceId);
+        return item != null && item.reliabilityScore != null ? item.reliabilityScore : 0.0;
+    }
+    
+    /**
+     * Get evidence statistics
+     */
+    public EvidenceStatistics getEvidenceStatistics(String sessionId) {
+        EvidenceStatistics stats = new EvidenceStatistics();
+        SessionAggregates sessionAggregates = aggregates.get(sessionId);
+        if (sessionAggregates == null) {
+            return stats;
         }
         
-        return Math.max(0.0, Math.min(1.0, baseScore));
+        stats.totalEvidence = sessionAggregates.total.sum();
+        stats.primaryCount = sessionAggregates.primary.sum();
+        stats.secondaryCount = sessionAggregates.secondary.sum();
+        stats.tertiaryCount = sessionAggregates.tertiary.sum();
+        stats.averageReliability = stats.totalEvidence == 0 ? 0.0
+                : sessionAggregates.reliabilitySum.sum() / stats.totalEvidence;
+        stats.linkedCount = sessionAggregates.linked.sum();
+        
+        return stats;
+    }
+    
+    private SessionAggregates aggregatesFor(String sessionId) {
+        return aggregates.computeIfAbsent(sessionId, s -> new SessionAggregates());
+    }
+    
+    private static <T> List<T> append(List<T> list, List<T> items) {
+        List<T> combined = new ArrayList<>(list.size() + items.size());
+        combined.addAll(list);
+        combined.addAll(items);
+        return Collections.unmodifiableList(combined);
     }
     
     /**
@@ -220,7 +811,7 @@ public class InMemoryEvidenceService {
     private double calculateLinkStrength(EvidenceDto evidenceItem, String linkType) {
         double baseStrength = evidenceItem.reliabilityScore;
         
-        switch (linkType.toUpperCase()) {
+        switch (linkType) {
             case "SUPPORTS":
                 return baseStrength;
             case "CONTRADICTS":
@@ -235,7 +826,9 @@ public class InMemoryEvidenceService {
     }
     
     /**
-     * DTO for evidence items
+     * DTO for evidence items.
+     * Instances are never modified once stored: every change replaces the item with an updated copy,
+     * so readers can sort and serialize them without locking.
      */
     public static class EvidenceDto {
         public Long id;
@@ -250,6 +843,31 @@ public class InMemoryEvidenceService {
         public List<ClaimLink> linkedClaims;
         public List<String> tags;
         public String status;
+        public int scoringVersion; // rules version behind reliabilityScore, unless set by hand
+        public Long duplicateOf; // earlier near-identical evidence in the session, if flagged as a duplicate
+        public int mergedCount; // near-duplicates folded into this item
+        public List<String> mergedSources;
+        
+        EvidenceDto copy() {
+            EvidenceDto copy = new EvidenceDto();
+            copy.id = id;
+            copy.content = content;
+            copy.sessionId = sessionId;
+            copy.type = type;
+            copy.source = source;
+            copy.reliabilityScore = reliabilityScore;
+            copy.reliabilityReason = reliabilityReason;
+            copy.createdAt = createdAt;
+            copy.lastVerifiedAt = lastVerifiedAt;
+            copy.linkedClaims = linkedClaims;
+            copy.tags = tags;
+            copy.status = status;
+            copy.scoringVersion = scoringVersion;
+            copy.duplicateOf = duplicateOf;
+            copy.mergedCount = mergedCount;
+            copy.mergedSources = mergedSources;
+            return copy;
+        }
     }
     
     /**
@@ -262,6 +880,346 @@ public class InMemoryEvidenceService {
         public LocalDateTime createdAt;
     }
     
+    /**
+     * A canonical evidence item and the near-duplicates detected against it
+     */
+    public static class DuplicateCluster {
+        public long canonicalId;
+        public List<DuplicateMember> duplicates;
+    }
+    
+    /**
+     * One detected duplicate; id is null when it was merged into the canonical item instead of stored
+     */
+    public static class DuplicateMember {
+        public Long id;
+        public String source;
+        public double similarity;
+        public boolean merged;
+    }
+    
+    /**
+     * A background pass rescoring a snapshot of evidence ids with one rules version
+     */
+    private final class RescoreJob {
+        final ScoringRules rules;
+        final long[] ids;
+        final LocalDateTime startedAt = LocalDateTime.now();
+        final long startedNanos = System.nanoTime();
+        final LongAdder processed = new LongAdder();
+        final LongAdder rescored = new LongAdder();
+        final LongAdder skippedManual = new LongAdder();
+        final LongAdder unchanged = new LongAdder();
+        volatile boolean cancelled;
+        volatile String state = "RUNNING";
+        volatile String error;
+        volatile long finishedNanos;
+        
+        RescoreJob(ScoringRules rules, long[] ids) {
+            this.rules = rules;
+            this.ids = ids;
+        }
+        
+        boolean isRunning() {
+            return "RUNNING".equals(state);
+        }
+        
+        void run() {
+            try {
+                new RescoreTask(this, 0, ids.length).invoke();
+                state = cancelled ? "CANCELLED" : "COMPLETED";
+            } catch (RuntimeException e) {
+                error = e.getMessage();
+                state = "FAILED";
+            } finally {
+                finishedNanos = System.nanoTime();
+            }
+        }
+        
+        RescoreStatus status() {
+            RescoreStatus status = new RescoreStatus();
+            status.version = rules.version;
+            status.state = state;
+            status.total = ids.length;
+            status.processed = processed.sum();
+            status.rescored = rescored.sum();
+            status.skippedManual = skippedManual.sum();
+            status.unchanged = unchanged.sum();
+            status.startedAt = startedAt;
+            long elapsed = (finishedNanos != 0 ? finishedNanos : System.nanoTime()) - startedNanos;
+            status.elapsedMs = TimeUnit.NANOSECONDS.toMillis(elapsed);
+            status.itemsPerSecond = status.processed / Math.max(1e-9, elapsed / 1e9);
+            status.percentComplete = status.total == 0 ? 100.0 : 100.0 * status.processed / status.total;
+            status.error = error;
+            return status;
+        }
+    }
+    
+    /**
+     * Splits a range of the job's ids in half until it is small enough to rescore directly
+     */
+    private final class RescoreTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final RescoreJob job;
+        private final int from;
+        private final int to;
+        
+        RescoreTask(RescoreJob job, int from, int to) {
+            this.job = job;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from > RESCORE_LEAF_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RescoreTask(job, from, middle), new RescoreTask(job, middle, to));
+                return;
+            }
+            for (int i = from; i < to && !job.cancelled; i++) {
+                journal.awaitCapacity();
+                rescore(job.ids[i], job);
+            }
+        }
+    }
+    
+    private record PendingEvidence(EvidenceDto item, int[] signature) { }
+    
+    /**
+     * Journal record of a detected duplicate, from which the session's clusters are rebuilt
+     */
+    private static class DuplicateRecord {
+        public String sessionId;
+        public long canonicalId;
+        public DuplicateMember member;
+    }
+    
+    /**
+     * Position of an item in a reliability index: highest reliability first, then lowest id
+     */
+    private static final class RankKey implements Comparable<RankKey> {
+        final double reliability;
+        final long id;
+        
+        RankKey(double reliability, long id) {
+            this.reliability = reliability;
+            this.id = id;
+        }
+        
+        static RankKey of(EvidenceDto item) {
+            return new RankKey(item.reliabilityScore, item.id);
+        }
+        
+        /**
+         * Parse a cursor produced by toCursor, e.g. "0.85_42"
+         */
+        static RankKey parse(String cursor) {
+            int separator = cursor.lastIndexOf('_');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            return new RankKey(Double.parseDouble(cursor.substring(0, separator)),
+                    Long.parseLong(cursor.substring(separator + 1)));
+        }
+        
+        String toCursor() {
+            return reliability + "_" + id;
+        }
+        
+        @Override
+        public int compareTo(RankKey other) {
+            int byReliability = Double.compare(other.reliability, reliability);
+            return byReliability != 0 ? byReliability : Long.compare(id, other.id);
+        }
+    }
+    
+    /**
+     * Evidence linked to one claim, with running totals per link type
+     */
+    private static class ClaimEvidence {
+        // Membership and rank of one evidence item only change inside that item's swap, so these need no lock
+        private final Set<Long> evidenceIds = ConcurrentHashMap.newKeySet();
+        private final NavigableSet<RankKey> ranked = new ConcurrentSkipListSet<>();
+        private final Map<String, LinkTotals> byLinkType = new LinkedHashMap<>();
+        private int totalLinks;
+        
+        ClaimEvidence() {
+            for (String linkType : LINK_TYPES) {
+                byLinkType.put(linkType, new LinkTotals());
+            }
+        }
+        
+        void add(RankKey evidenceRank, ClaimLink link) {
+            if (evidenceIds.add(evidenceRank.id)) {
+                ranked.add(evidenceRank);
+            }
+            addTotals(link);
+        }
+        
+        private synchronized void addTotals(ClaimLink link) {
+            LinkTotals totals = byLinkType.get(link.linkType);
+            if (totals != null) {
+                totals.count++;
+                totals.strength += link.strength;
+            }
+            totalLinks++;
+        }
+        
+        void rerank(RankKey before, RankKey after) {
+            if (evidenceIds.contains(after.id)) {
+                ranked.remove(before);
+                ranked.add(after);
+            }
+        }
+        
+        synchronized ClaimSupport summary(Long claimId) {
+            ClaimSupport support = emptySummary(claimId);
+            support.evidenceCount = evidenceIds.size();
+            support.totalLinks = totalLinks;
+            for (Map.Entry<String, LinkTotals> entry : byLinkType.entrySet()) {
+                LinkTotals copy = new LinkTotals();
+                copy.count = entry.getValue().count;
+                copy.strength = entry.getValue().strength;
+                support.byLinkType.put(entry.getKey(), copy);
+            }
+            LinkTotals supports = support.byLinkType.get("SUPPORTS");
+            LinkTotals contradicts = support.byLinkType.get("CONTRADICTS");
+            support.netStrength = supports.strength - contradicts.strength;
+            return support;
+        }
+        
+        static ClaimSupport emptySummary(Long claimId) {
+            ClaimSupport support = new ClaimSupport();
+            support.claimId = claimId;
+            support.byLinkType = new LinkedHashMap<>();
+            for (String linkType : LINK_TYPES) {
+                support.byLinkType.put(linkType, new LinkTotals());
+            }
+            return support;
+        }
+    }
+    
+    /**
+     * Aggregated evidence links for a claim
+     */
+    public static class ClaimSupport {
+        public Long claimId;
+        public int evidenceCount;
+        public int totalLinks;
+        public double netStrength; // SUPPORTS strength minus CONTRADICTS strength
+        public Map<String, LinkTotals> byLinkType;
+    }
+    
+    public static class LinkTotals {
+        public long count;
+        public double strength;
+    }
+    
+    /**
+     * Running per-session totals behind getEvidenceStatistics
+     */
+    private static class SessionAggregates {
+        final LongAdder total = new LongAdder();
+        final LongAdder primary = new LongAdder();
+        final LongAdder secondary = new LongAdder();
+        final LongAdder tertiary = new LongAdder();
+        final LongAdder linked = new LongAdder();
+        final DoubleAdder reliabilitySum = new DoubleAdder();
+        
+        void added(EvidenceDto item) {
+            total.increment();
+            switch (item.type) {
+                case "PRIMARY" -> primary.increment();
+                case "SECONDARY" -> secondary.increment();
+                case "TERTIARY" -> tertiary.increment();
+                default -> { }
+            }
+            reliabilitySum.add(item.reliabilityScore);
+        }
+    }
+    
+    /**
+     * A page of evidence; nextCursor is null on the last page
+     */
+    public static class EvidencePage {
+        public List<EvidenceDto> items;
+        public String nextCursor;
+    }
+    
+    /**
+     * Search results, best first; truncated when the prefix word matched more indexed words than were
+     * searched, so items matching only its rarest completions may be missing
+     */
+    public static class SearchResults {
+        public List<EvidenceDto> items;
+        public boolean truncated;
+    }
+    
+    /**
+     * One NDJSON line of a bulk import
+     */
+    public static class BulkEvidenceLine {
+        public String content;
+        public String sessionId;
+        public String type;
+        public String source;
+        public List<String> tags;
+    }
+    
+    /**
+     * Outcome of one imported line: the new evidence id or an error.
+     * duplicateOf is set for near-duplicates; when merged, id is the item it was merged into.
+     */
+    public static class BulkLineResult {
+        public long line;
+        public Long id;
+        public Long duplicateOf;
+        public String error;
+    }
+    
+    /**
+     * A sentence that looks like evidence, with its [start, end) character offsets in the source text
+     */
+    public static class ExtractedSentence {
+        public long start;
+        public long end;
+        public String text;
+    }
+    
+    public static class ExtractionSummary {
+        public long characters;
+        public long matches;
+        public long elapsedMs;
+    }
+    
+    /**
+     * Progress of a rescoring job; state is IDLE, RUNNING, COMPLETED, CANCELLED or FAILED
+     */
+    public static class RescoreStatus {
+        public int version;
+        public String state;
+        public long total;
+        public long processed;
+        public long rescored;
+        public long skippedManual;
+        public long unchanged;
+        public double percentComplete;
+        public LocalDateTime startedAt;
+        public long elapsedMs;
+        public double itemsPerSecond;
+        public String error;
+    }
+    
+    public static class BulkImportSummary {
+        public long imported;
+        public long duplicates;
+        public long failed;
+        public long elapsedMs;
+        public double itemsPerSecond;
+    }
+    
     /**
      * Statistics class
      */
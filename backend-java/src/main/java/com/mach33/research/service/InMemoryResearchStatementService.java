@@ -1,18 +1,77 @@
 package com.mach33.research.service;
 
+import com.mach33.research.config.StatementProperties;
+import com.mach33.research.util.BoundedTtlCache;
+import com.mach33.research.util.KeywordMatcher;
+import com.mach33.research.util.SingleFlight;
+import jakarta.annotation.PreDestroy;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.LongAdder;
 
 @Service
 public class InMemoryResearchStatementService {
     
+    private static final KeywordMatcher IMPACT_TERMS = KeywordMatcher.of("impact", "effect");
+    private static final KeywordMatcher RELATIONSHIP_TERMS = KeywordMatcher.of("relationship", "correlation");
+    
+    public static final int MAX_PAGE_SIZE = 1000;
+    private static final String JOURNAL_STATEMENT = "statement";
+    
     private final Map<Long, ResearchStatementDto> statements = new ConcurrentHashMap<>();
+    private final Map<String, SessionStatements> sessions = new ConcurrentHashMap<>();
+    private final Map<Long, StatementHistory> histories = new ConcurrentHashMap<>();
+    private final StatementTrigramIndex textIndex = new StatementTrigramIndex();
     private final AtomicLong idGenerator = new AtomicLong(1);
+    private final ThreadPoolExecutor subquestionExecutor;
+    private final BoundedTtlCache<String, List<String>> subquestionCache;
+    private final SingleFlight<String, List<String>> subquestionFlights = new SingleFlight<>(Duration.ZERO);
+    private final Map<String, SubquestionJob> runningJobs = new ConcurrentHashMap<>();
+    private final BoundedTtlCache<String, SubquestionJob> finishedJobs; // retention counts from completion
+    private final int maxRunningJobs;
+    private final Duration simulatedLatency;
+    private final StateJournal journal;
+    
+    public InMemoryResearchStatementService(StatementProperties properties, StateJournal journal) {
+        StatementProperties.Subquestions subquestions = properties.getSubquestions();
+        AtomicInteger workerCount = new AtomicInteger(1);
+        this.subquestionExecutor = new ThreadPoolExecutor(
+                subquestions.getWorkers(), subquestions.getWorkers(), 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, subquestions.getQueueCapacity())),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "subquestions-" + workerCount.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.subquestionCache = new BoundedTtlCache<>(subquestions.getCacheMaxEntries(), subquestions.getCacheTtl());
+        this.finishedJobs = new BoundedTtlCache<>(subquestions.getMaxJobs(), subquestions.getJobRetention());
+        this.maxRunningJobs = subquestions.getMaxJobs();
+        this.simulatedLatency = subquestions.getSimulatedLatency();
+        this.journal = journal;
+        // One record per refinement survives compaction: replay rebuilds the version history from them
+        journal.register(JOURNAL_STATEMENT, ResearchStatementDto.class,
+                statement -> statement.id + ":" + (statement.refinementCount != null ? statement.refinementCount : 0),
+                this::restoreStatement);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        subquestionExecutor.shutdownNow();
+    }
     
     /**
      * Create a new research statement
@@ -28,7 +87,13 @@ public class InMemoryResearchStatementService {
         statement.refinementCount = 0;
         statement.subquestions = new ArrayList<>();
         
+        long sequence = journal.append(JOURNAL_STATEMENT, statement);
+        // Indexed before it is published, so status changes can only follow the initial count
+        sessionFor(sessionId).added(statement);
+        histories.put(statement.id, new StatementHistory(originalStatement, statement.createdAt));
+        textIndex.add(statement.id, sessionId, originalStatement);
         statements.put(statement.id, statement);
+        journal.awaitDurable(sequence);
         return statement;
     }
     
@@ -41,15 +106,104 @@ public class InMemoryResearchStatementService {
             throw new RuntimeException("Research statement not found with id: " + statementId);
         }
         
-        statement.refinedStatement = refinedStatement;
-        statement.refinementNotes = refinementNotes;
-        statement.status = "REFINED";
-        statement.lastRefinedAt = LocalDateTime.now();
-        statement.refinementCount++;
+        long sequence;
+        synchronized (statement) {
+            ResearchStatementDto next = statement.copy();
+            next.refinedStatement = refinedStatement;
+            next.refinementNotes = refinementNotes;
+            next.status = "REFINED";
+            next.lastRefinedAt = LocalDateTime.now();
+            next.refinementCount = statement.refinementCount + 1;
+            sequence = journal.append(JOURNAL_STATEMENT, next);
+            apply(statement, next);
+        }
         
+        journal.awaitDurable(sequence);
         return statement;
     }
     
+    /**
+     * Replay a journaled snapshot: index a new statement, or apply it to the stored one
+     */
+    private void restoreStatement(ResearchStatementDto snapshot) {
+        if (snapshot.subquestions == null) {
+            snapshot.subquestions = new ArrayList<>();
+        }
+        idGenerator.accumulateAndGet(snapshot.id + 1, Math::max);
+        ResearchStatementDto statement = statements.get(snapshot.id);
+        if (statement == null) {
+            sessionFor(snapshot.sessionId).added(snapshot);
+            histories.put(snapshot.id, new StatementHistory(snapshot.originalStatement, snapshot.createdAt));
+            textIndex.add(snapshot.id, snapshot.sessionId, snapshot.originalStatement);
+            statements.put(snapshot.id, snapshot);
+            return;
+        }
+        apply(statement, snapshot);
+    }
+    
+    /**
+     * Bring the stored statement up to a newer snapshot of it: status, refinement and subquestions,
+     * adding a version to its history and reindexing its text when the snapshot is a new refinement.
+     * Outside replay, callers hold the statement's lock and have already journaled the snapshot.
+     */
+    private void apply(ResearchStatementDto statement, ResearchStatementDto snapshot) {
+        int refinements = statement.refinementCount != null ? statement.refinementCount : 0;
+        if (snapshot.refinementCount != null && snapshot.refinementCount > refinements) {
+            histories.get(snapshot.id).append(snapshot.refinedStatement, snapshot.refinementNotes, snapshot.lastRefinedAt);
+            textIndex.replace(snapshot.id, snapshot.sessionId,
+                    Arrays.asList(statement.originalStatement, statement.refinedStatement),
+                    Arrays.asList(statement.originalStatement, snapshot.refinedStatement));
+        }
+        changeStatus(statement, snapshot.status);
+        statement.refinedStatement = snapshot.refinedStatement;
+        statement.refinementNotes = snapshot.refinementNotes;
+        statement.lastRefinedAt = snapshot.lastRefinedAt;
+        statement.refinementCount = snapshot.refinementCount;
+        statement.subquestions = snapshot.subquestions;
+    }
+    
+    /**
+     * List a statement's versions, oldest first: version 1 is the original, each refinement adds one
+     */
+    public List<VersionSummary> getVersions(Long statementId) {
+        return historyOf(statementId).summaries();
+    }
+    
+    /**
+     * Get the text and notes of one version of a statement
+     */
+    public StatementVersion getVersion(Long statementId, int version) {
+        StatementHistory history = historyOf(statementId);
+        StatementVersion statementVersion = new StatementVersion();
+        statementVersion.statementId = statementId;
+        statementVersion.version = version;
+        statementVersion.text = history.text(version);
+        statementVersion.notes = history.notes(version);
+        statementVersion.createdAt = history.createdAt(version);
+        return statementVersion;
+    }
+    
+    /**
+     * Word-level diff between two versions of a statement
+     */
+    public StatementDiff diffVersions(Long statementId, int fromVersion, int toVersion) {
+        StatementHistory history = historyOf(statementId);
+        StatementDiff diff = new StatementDiff();
+        diff.statementId = statementId;
+        diff.fromVersion = fromVersion;
+        diff.toVersion = toVersion;
+        diff.edits = StatementHistory.diff(history.text(fromVersion), history.text(toVersion));
+        return diff;
+    }
+    
+    private StatementHistory historyOf(Long statementId) {
+        StatementHistory history = histories.get(statementId);
+        if (history == null) {
+            throw new RuntimeException("Research statement not found with id: " + statementId);
+        }
+        return history;
+    }
+    
     /**
      * Add subquestions to a research statement
      */
@@ -59,7 +213,14 @@ public class InMemoryResearchStatementService {
             throw new RuntimeException("Research statement not found with id: " + statementId);
         }
         
-        statement.subquestions.addAll(subquestions);
+        long sequence;
+        synchronized (statement) {
+            ResearchStatementDto next = statement.copy();
+            next.subquestions.addAll(subquestions);
+            sequence = journal.append(JOURNAL_STATEMENT, next);
+            apply(statement, next);
+        }
+        journal.awaitDurable(sequence);
         return statement;
     }
     
@@ -68,14 +229,14 @@ public class InMemoryResearchStatementService {
      */
     public List<String> generateSubquestions(String researchStatement) {
         // Simple rule-based generation for now
-        if (researchStatement.toLowerCase().contains("impact") || researchStatement.toLowerCase().contains("effect")) {
+        if (IMPACT_TERMS.containsAny(researchStatement)) {
             return Arrays.asList(
                 "What are the direct effects of " + extractMainTopic(researchStatement) + "?",
                 "What are the indirect consequences?",
                 "How can these impacts be measured?",
                 "What factors influence the magnitude of impact?"
             );
-        } else if (researchStatement.toLowerCase().contains("relationship") || researchStatement.toLowerCase().contains("correlation")) {
+        } else if (RELATIONSHIP_TERMS.containsAny(researchStatement)) {
             return Arrays.asList(
                 "What is the nature of this relationship?",
                 "Is this relationship causal or correlational?",
@@ -92,6 +253,99 @@ public class InMemoryResearchStatementService {
         }
     }
     
+    /**
+     * Start generating subquestions in the background and return the job at once; poll it with
+     * getSubquestionJob or wait on subquestionJobDone. Results are cached by normalized statement text,
+     * and identical statements in flight share one generation. When the worker pool and its queue are
+     * full, or max-jobs are already running, the rule-based generator answers immediately instead
+     * (source FALLBACK). Running jobs are never evicted; a job's retention starts when it finishes.
+     */
+    public SubquestionJob submitSubquestionJob(String researchStatement) {
+        if (researchStatement == null || researchStatement.isBlank()) {
+            throw new IllegalArgumentException("researchStatement is required");
+        }
+        SubquestionJob job = new SubquestionJob();
+        job.id = UUID.randomUUID().toString();
+        job.researchStatement = researchStatement;
+        job.state = "RUNNING";
+        job.createdAt = LocalDateTime.now();
+        if (runningJobs.size() >= maxRunningJobs) {
+            job.complete("FALLBACK", generateSubquestions(researchStatement), null);
+            finishedJobs.put(job.id, job);
+            return job;
+        }
+        runningJobs.put(job.id, job);
+        job.done.whenComplete((ignored, error) -> {
+            // Retained before it leaves the running map, so a poll in between still finds it
+            finishedJobs.put(job.id, job);
+            runningJobs.remove(job.id);
+        });
+        
+        String key = normalizeStatement(researchStatement);
+        List<String> cached = subquestionCache.get(key);
+        if (cached != null) {
+            job.complete("CACHE", cached, null);
+            return job;
+        }
+        boolean[] leading = {false};
+        subquestionFlights.run(key, () -> {
+            leading[0] = true;
+            CompletableFuture<List<String>> generated = CompletableFuture.supplyAsync(
+                    () -> generateWithModel(researchStatement), subquestionExecutor);
+            return generated.thenApply(result -> {
+                subquestionCache.put(key, result);
+                return result;
+            });
+        }).whenComplete((result, error) -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof RejectedExecutionException) {
+                job.complete("FALLBACK", generateSubquestions(researchStatement), null);
+            } else if (cause != null) {
+                job.complete(null, null, String.valueOf(cause.getMessage()));
+            } else {
+                job.complete(leading[0] ? "GENERATED" : "COALESCED", result, null);
+            }
+        });
+        return job;
+    }
+    
+    /**
+     * A subquestion job by id, or empty if unknown or finished longer ago than its retention
+     */
+    public Optional<SubquestionJob> getSubquestionJob(String jobId) {
+        SubquestionJob running = runningJobs.get(jobId);
+        return Optional.ofNullable(running != null ? running : finishedJobs.get(jobId));
+    }
+    
+    /**
+     * Completes with the job once it has finished; already complete if it has
+     */
+    public CompletableFuture<SubquestionJob> subquestionJobDone(SubquestionJob job) {
+        return job.done.thenApply(ignored -> job);
+    }
+    
+    /**
+     * Subquestion generation as a model call will see it: may block for seconds on a worker thread
+     */
+    private List<String> generateWithModel(String researchStatement) {
+        if (!simulatedLatency.isZero()) {
+            try {
+                Thread.sleep(simulatedLatency.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Subquestion generation interrupted");
+            }
+        }
+        return List.copyOf(generateSubquestions(researchStatement));
+    }
+    
+    /**
+     * Cache key: lowercase, with runs of whitespace collapsed and the ends trimmed
+     */
+    private static String normalizeStatement(String statement) {
+        return statement.trim().replaceAll("\\s+", " ").toLowerCase();
+    }
+    
     /**
      * Extract main topic from research statement (simple implementation)
      */
@@ -104,32 +358,29 @@ public class InMemoryResearchStatementService {
     }
     
     /**
-     * Get all statements for a session
+     * Get all statements for a session, newest first
      */
     public List<ResearchStatementDto> getStatementsBySession(String sessionId) {
-        return statements.values().stream()
-                .filter(s -> sessionId.equals(s.sessionId))
-                .sorted((a, b) -> b.createdAt.compareTo(a.createdAt))
-                .collect(Collectors.toList());
+        SessionStatements session = sessions.get(sessionId);
+        return session != null ? new ArrayList<>(session.newestFirst.values()) : new ArrayList<>();
     }
     
     /**
-     * Get statements by type for a session
+     * Get statements by type for a session, newest first
      */
     public List<ResearchStatementDto> getStatementsByType(String sessionId, String type) {
-        return statements.values().stream()
-                .filter(s -> sessionId.equals(s.sessionId) && type.equals(s.type))
-                .sorted((a, b) -> b.createdAt.compareTo(a.createdAt))
-                .collect(Collectors.toList());
+        SessionStatements session = sessions.get(sessionId);
+        NavigableMap<Long, ResearchStatementDto> byType = session != null ? session.byType.get(type) : null;
+        return byType != null ? new ArrayList<>(byType.values()) : new ArrayList<>();
     }
     
     /**
-     * Get the current active statement for a session
+     * Get the current active statement for a session: the newest one with status ACTIVE
      */
     public Optional<ResearchStatementDto> getActiveStatement(String sessionId) {
-        return statements.values().stream()
-                .filter(s -> sessionId.equals(s.sessionId) && "ACTIVE".equals(s.status))
-                .max(Comparator.comparing(s -> s.createdAt));
+        SessionStatements session = sessions.get(sessionId);
+        Long activeId = session != null ? session.activeId() : null;
+        return activeId != null ? Optional.ofNullable(statements.get(activeId)) : Optional.empty();
     }
     
     /**
@@ -141,42 +392,210 @@ public class InMemoryResearchStatementService {
             throw new RuntimeException("Research statement not found with id: " + statementId);
         }
         
-        statement.status = status;
+        long sequence;
+        synchronized (statement) {
+            ResearchStatementDto next = statement.copy();
+            next.status = status;
+            sequence = journal.append(JOURNAL_STATEMENT, next);
+            apply(statement, next);
+        }
+        journal.awaitDurable(sequence);
         return statement;
     }
     
     /**
-     * Search statements by content
+     * Set the status and move the statement between the session's status counters and active pointer.
+     * Callers hold the statement's lock so concurrent transitions are counted once each.
+     */
+    private void changeStatus(ResearchStatementDto statement, String status) {
+        String previous = statement.status;
+        statement.status = status;
+        sessionFor(statement.sessionId).statusChanged(statement.id, previous, status);
+    }
+    
+    private SessionStatements sessionFor(String sessionId) {
+        return sessions.computeIfAbsent(sessionId, s -> new SessionStatements());
+    }
+    
+    /**
+     * Search statements by content: every statement whose original or refined text contains the query,
+     * ignoring case, best matches first
      */
     public List<ResearchStatementDto> searchStatements(String sessionId, String searchTerm) {
-        String lowerSearchTerm = searchTerm.toLowerCase();
-        return statements.values().stream()
-                .filter(s -> sessionId.equals(s.sessionId))
-                .filter(s -> 
-                    (s.originalStatement != null && s.originalStatement.toLowerCase().contains(lowerSearchTerm)) ||
-                    (s.refinedStatement != null && s.refinedStatement.toLowerCase().contains(lowerSearchTerm))
-                )
-                .sorted((a, b) -> b.createdAt.compareTo(a.createdAt))
-                .collect(Collectors.toList());
+        return searchStatements(sessionId, searchTerm, null, null).items;
+    }
+    
+    /**
+     * Get a page of a session's search results, continuing after the cursor if given.
+     * Queries of three or more characters are answered from the trigram index; shorter ones scan the session.
+     */
+    public StatementPage searchStatements(String sessionId, String searchTerm, Integer limit, String cursor) {
+        String query = StatementTrigramIndex.fold(searchTerm);
+        Collection<ResearchStatementDto> candidates;
+        if (query.length() < StatementTrigramIndex.GRAM) {
+            candidates = getStatementsBySession(sessionId);
+        } else {
+            candidates = lookup(textIndex.candidates(sessionId, query));
+        }
+        return rank(candidates, query, limit, cursor);
+    }
+    
+    /**
+     * Search every session, for administrators; the query must be at least three characters
+     * so it can always be answered from the index
+     */
+    public StatementPage searchAllStatements(String searchTerm, Integer limit, String cursor) {
+        String query = StatementTrigramIndex.fold(searchTerm);
+        if (query.length() < StatementTrigramIndex.GRAM) {
+            throw new IllegalArgumentException("Cross-session search needs at least " + StatementTrigramIndex.GRAM + " characters");
+        }
+        return rank(lookup(textIndex.candidates(null, query)), query, limit, cursor);
+    }
+    
+    private List<ResearchStatementDto> lookup(long[] ids) {
+        List<ResearchStatementDto> found = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            ResearchStatementDto statement = statements.get(id);
+            if (statement != null) {
+                found.add(statement);
+            }
+        }
+        return found;
+    }
+    
+    /**
+     * Verify candidates against their current text and order them: occurrences in the refined text count
+     * double, one more point if the query starts a word, newest first on ties
+     */
+    private StatementPage rank(Collection<ResearchStatementDto> candidates, String query, Integer limit, String cursor) {
+        List<SearchHit> hits = new ArrayList<>();
+        for (ResearchStatementDto statement : candidates) {
+            String original = statement.originalStatement != null ? StatementTrigramIndex.fold(statement.originalStatement) : "";
+            String refined = statement.refinedStatement != null ? StatementTrigramIndex.fold(statement.refinedStatement) : "";
+            int score = occurrences(original, query) + 2 * occurrences(refined, query);
+            if (score == 0) {
+                continue;
+            }
+            if (startsWord(original, query) || startsWord(refined, query)) {
+                score++;
+            }
+            hits.add(new SearchHit(score, statement));
+        }
+        hits.sort(null);
+        
+        StatementPage page = new StatementPage();
+        page.items = new ArrayList<>();
+        SearchHit after = cursor != null ? SearchHit.parse(cursor) : null;
+        int max = limit != null ? Math.max(1, Math.min(limit, MAX_PAGE_SIZE)) : Integer.MAX_VALUE;
+        SearchHit last = null;
+        for (SearchHit hit : hits) {
+            if (after != null && hit.compareTo(after) <= 0) {
+                continue;
+            }
+            if (page.items.size() == max) {
+                page.nextCursor = last.toCursor();
+                break;
+            }
+            page.items.add(hit.statement);
+            last = hit;
+        }
+        return page;
+    }
+    
+    private static int occurrences(String text, String query) {
+        if (query.isEmpty()) {
+            return 1;
+        }
+        int count = 0;
+        for (int at = text.indexOf(query); at >= 0; at = text.indexOf(query, at + 1)) {
+            count++;
+        }
+        return count;
+    }
+    
+    private static boolean startsWord(String text, String query) {
+        for (int at = text.indexOf(query); at >= 0; at = text.indexOf(query, at + 1)) {
+            if (at == 0 || !Character.isLetterOrDigit(text.charAt(at - 1))) {
+                return true;
+            }
+        }
+        return false;
     }
     
     /**
      * Get statement statistics for a session
      */
     public StatementStatistics getStatementStatistics(String sessionId) {
-        List<ResearchStatementDto> sessionStatements = getStatementsBySession(sessionId);
-        
         StatementStatistics stats = new StatementStatistics();
-        stats.totalStatements = sessionStatements.size();
-        stats.exploratoryCount = sessionStatements.stream().mapToInt(s -> "EXPLORATORY".equals(s.type) ? 1 : 0).sum();
-        stats.specificCount = sessionStatements.stream().mapToInt(s -> "SPECIFIC".equals(s.type) ? 1 : 0).sum();
-        stats.hypothesisCount = sessionStatements.stream().mapToInt(s -> "HYPOTHESIS".equals(s.type) ? 1 : 0).sum();
-        stats.activeCount = sessionStatements.stream().mapToInt(s -> "ACTIVE".equals(s.status) ? 1 : 0).sum();
-        stats.refinedCount = sessionStatements.stream().mapToInt(s -> "REFINED".equals(s.status) ? 1 : 0).sum();
+        SessionStatements session = sessions.get(sessionId);
+        if (session == null) {
+            return stats;
+        }
+        
+        stats.totalStatements = session.total.sum();
+        stats.exploratoryCount = session.count(session.typeCounts, "EXPLORATORY");
+        stats.specificCount = session.count(session.typeCounts, "SPECIFIC");
+        stats.hypothesisCount = session.count(session.typeCounts, "HYPOTHESIS");
+        stats.activeCount = session.count(session.statusCounts, "ACTIVE");
+        stats.refinedCount = session.count(session.statusCounts, "REFINED");
         
         return stats;
     }
     
+    /**
+     * One session's statements indexed newest first (ids follow creation order), with running
+     * counts per type and status and the ids of ACTIVE statements, so /active is a single lookup
+     */
+    private static class SessionStatements {
+        final NavigableMap<Long, ResearchStatementDto> newestFirst = new ConcurrentSkipListMap<>(Comparator.reverseOrder());
+        final Map<String, NavigableMap<Long, ResearchStatementDto>> byType = new ConcurrentHashMap<>();
+        final NavigableSet<Long> activeIds = new ConcurrentSkipListSet<>(Comparator.reverseOrder());
+        final LongAdder total = new LongAdder();
+        final Map<String, LongAdder> typeCounts = new ConcurrentHashMap<>();
+        final Map<String, LongAdder> statusCounts = new ConcurrentHashMap<>();
+        
+        void added(ResearchStatementDto statement) {
+            newestFirst.put(statement.id, statement);
+            if (statement.type != null) {
+                byType.computeIfAbsent(statement.type, t -> new ConcurrentSkipListMap<>(Comparator.reverseOrder()))
+                        .put(statement.id, statement);
+                typeCounts.computeIfAbsent(statement.type, t -> new LongAdder()).increment();
+            }
+            total.increment();
+            statusChanged(statement.id, null, statement.status);
+        }
+        
+        void statusChanged(long id, String previous, String status) {
+            if (Objects.equals(previous, status)) {
+                return;
+            }
+            if (previous != null) {
+                statusCounts.computeIfAbsent(previous, s -> new LongAdder()).decrement();
+            }
+            if (status != null) {
+                statusCounts.computeIfAbsent(status, s -> new LongAdder()).increment();
+            }
+            if ("ACTIVE".equals(status)) {
+                activeIds.add(id);
+            } else if ("ACTIVE".equals(previous)) {
+                activeIds.remove(id);
+            }
+        }
+        
+        /**
+         * Id of the newest ACTIVE statement, or null
+         */
+        Long activeId() {
+            Iterator<Long> newest = activeIds.iterator();
+            return newest.hasNext() ? newest.next() : null;
+        }
+        
+        long count(Map<String, LongAdder> counts, String key) {
+            LongAdder count = counts.get(key);
+            return count != null ? count.sum() : 0;
+        }
+    }
+    
     /**
      * DTO for research statements
      */
@@ -192,6 +611,136 @@ public class InMemoryResearchStatementService {
         public List<String> subquestions;
         public String refinementNotes;
         public Integer refinementCount;
+        
+        /**
+         * The statement as it would be after a change: set the new values on the copy, journal it, then apply it
+         */
+        ResearchStatementDto copy() {
+            ResearchStatementDto copy = new ResearchStatementDto();
+            copy.id = id;
+            copy.originalStatement = originalStatement;
+            copy.refinedStatement = refinedStatement;
+            copy.sessionId = sessionId;
+            copy.type = type;
+            copy.status = status;
+            copy.createdAt = createdAt;
+            copy.lastRefinedAt = lastRefinedAt;
+            copy.subquestions = new ArrayList<>(subquestions);
+            copy.refinementNotes = refinementNotes;
+            copy.refinementCount = refinementCount;
+            return copy;
+        }
+    }
+    
+    /**
+     * Position of a statement in search results: highest score first, then newest
+     */
+    private static final class SearchHit implements Comparable<SearchHit> {
+        final int score;
+        final long id;
+        final ResearchStatementDto statement;
+        
+        SearchHit(int score, ResearchStatementDto statement) {
+            this(score, statement.id, statement);
+        }
+        
+        private SearchHit(int score, long id, ResearchStatementDto statement) {
+            this.score = score;
+            this.id = id;
+            this.statement = statement;
+        }
+        
+        /**
+         * Parse a cursor produced by toCursor, e.g. "3_42"
+         */
+        static SearchHit parse(String cursor) {
+            int separator = cursor.indexOf('_');
+            try {
+                return new SearchHit(Integer.parseInt(cursor.substring(0, separator)),
+                        Long.parseLong(cursor.substring(separator + 1)), null);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+        }
+        
+        String toCursor() {
+            return score + "_" + id;
+        }
+        
+        @Override
+        public int compareTo(SearchHit other) {
+            int byScore = Integer.compare(other.score, score);
+            return byScore != 0 ? byScore : Long.compare(other.id, id);
+        }
+    }
+    
+    /**
+     * A page of statements; nextCursor is null on the last page
+     */
+    public static class StatementPage {
+        public List<ResearchStatementDto> items;
+        public String nextCursor;
+    }
+    
+    /**
+     * A version in a statement's history, without its text
+     */
+    public static class VersionSummary {
+        public int version;
+        public LocalDateTime createdAt;
+        public String notes;
+        public int length;
+    }
+    
+    public static class StatementVersion {
+        public Long statementId;
+        public int version;
+        public String text;
+        public String notes;
+        public LocalDateTime createdAt;
+    }
+    
+    /**
+     * Edits turning one version into another; concatenating EQUAL and DELETE texts gives the from version,
+     * EQUAL and INSERT texts the to version
+     */
+    public static class StatementDiff {
+        public Long statementId;
+        public int fromVersion;
+        public int toVersion;
+        public List<DiffEdit> edits;
+    }
+    
+    public static class DiffEdit {
+        public String op; // EQUAL, INSERT, DELETE
+        public String text;
+    }
+    
+    /**
+     * An asynchronous subquestion generation request.
+     * state is RUNNING, COMPLETED or FAILED; source says where a completed result came from:
+     * GENERATED, COALESCED (shared with an identical in-flight job), CACHE or FALLBACK (pool saturated).
+     */
+    public static class SubquestionJob {
+        public String id;
+        public String researchStatement;
+        public volatile String state;
+        public volatile String source;
+        public volatile List<String> subquestions;
+        public volatile String error;
+        public LocalDateTime createdAt;
+        public volatile LocalDateTime completedAt;
+        
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        
+        void complete(String source, List<String> subquestions, String error) {
+            this.source = source;
+            this.subquestions = subquestions;
+            this.error = error;
+            this.completedAt = LocalDateTime.now();
+            this.state = error == null ? "COMPLETED" : "FAILED";
+            done.complete(null);
+        }
     }
     
     /**
@@ -0,0 +1,214 @@
+package com.mach33.research.service;
+
+import com.mach33.research.service.InMemoryEvidenceService.DuplicateCluster;
+import com.mach33.research.service.InMemoryEvidenceService.DuplicateMember;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-session near-duplicate detector for evidence text.
+ * Text is normalized and cut into character 5-shingles; each item gets a 64-value MinHash
+ * signature, which is split into 16 bands of 4 rows for locality-sensitive hashing.
+ * Only items that share a band bucket are compared, so lookups stay fast as sessions grow.
+ */
+class NearDuplicateIndex {
+
+    private static final int SHINGLE_LENGTH = 5;
+    private static final int BANDS = 16;
+    private static final int ROWS = 4;
+    private static final int HASHES = BANDS * ROWS;
+    // Hash function i maps a mixed shingle hash x to the high bits of MULTIPLIERS[i] * x + OFFSETS[i]
+    private static final long[] MULTIPLIERS = new long[HASHES];
+    private static final long[] OFFSETS = new long[HASHES];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5eed_1e55L);
+        for (int i = 0; i < HASHES; i++) {
+            MULTIPLIERS[i] = random.nextLong() | 1L;
+            OFFSETS[i] = random.nextLong();
+        }
+    }
+
+    private final double threshold;
+    private final Map<String, SessionLsh> sessions = new ConcurrentHashMap<>();
+
+    NearDuplicateIndex(double threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * An existing item the new one duplicates, with the estimated Jaccard similarity of their shingles
+     */
+    static final class Match {
+        final long canonicalId;
+        final double similarity;
+
+        Match(long canonicalId, double similarity) {
+            this.canonicalId = canonicalId;
+            this.similarity = similarity;
+        }
+    }
+
+    /**
+     * MinHash signature of the text, or null if it has no letters or digits
+     */
+    static int[] signature(String text) {
+        String normalized = normalize(text);
+        if (normalized.isEmpty()) {
+            return null;
+        }
+        long[] minimums = new long[HASHES];
+        Arrays.fill(minimums, Long.MAX_VALUE);
+        int shingles = Math.max(1, normalized.length() - SHINGLE_LENGTH + 1);
+        for (int start = 0; start < shingles; start++) {
+            long shingle = 0x9E3779B97F4A7C15L;
+            for (int i = start; i < Math.min(normalized.length(), start + SHINGLE_LENGTH); i++) {
+                shingle = (shingle ^ normalized.charAt(i)) * 0x100000001B3L;
+            }
+            shingle = mix(shingle);
+            for (int h = 0; h < HASHES; h++) {
+                long value = (MULTIPLIERS[h] * shingle + OFFSETS[h]) >>> 1;
+                if (value < minimums[h]) {
+                    minimums[h] = value;
+                }
+            }
+        }
+        int[] signature = new int[HASHES];
+        for (int h = 0; h < HASHES; h++) {
+            signature[h] = (int) (minimums[h] >>> 31);
+        }
+        return signature;
+    }
+
+    /**
+     * Find the most similar earlier item at or above the threshold; if there is none, run store and then
+     * index this one as a new canonical item. Lookup, store and registration are atomic per session, and
+     * an item whose store throws is never indexed, so matches always name a stored item.
+     */
+    Match register(String sessionId, long id, int[] signature, Runnable store) {
+        return sessions.computeIfAbsent(sessionId, s -> new SessionLsh()).register(id, signature, threshold, store);
+    }
+
+    /**
+     * Index an item known to be canonical without looking for a match, as when replaying stored evidence
+     */
+    void restore(String sessionId, long id, int[] signature) {
+        sessions.computeIfAbsent(sessionId, s -> new SessionLsh()).index(id, signature);
+    }
+
+    /**
+     * Remember that an item was detected as a duplicate, flagged or merged
+     */
+    void recordDuplicate(String sessionId, long canonicalId, DuplicateMember member) {
+        sessions.computeIfAbsent(sessionId, s -> new SessionLsh()).recordDuplicate(canonicalId, member);
+    }
+
+    /**
+     * Canonical items that have duplicates, largest clusters first
+     */
+    List<DuplicateCluster> clusters(String sessionId) {
+        SessionLsh session = sessions.get(sessionId);
+        return session != null ? session.clusters() : new ArrayList<>();
+    }
+
+    /**
+     * Lowercased letters and digits, with every other run of characters collapsed to one space
+     */
+    static String normalize(String text) {
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSpace && normalized.length() > 0) {
+                    normalized.append(' ');
+                }
+                pendingSpace = false;
+                normalized.append(Character.toLowerCase(c));
+            } else {
+                pendingSpace = true;
+            }
+        }
+        return normalized.toString();
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    private static double similarity(int[] a, int[] b) {
+        int same = 0;
+        for (int i = 0; i < HASHES; i++) {
+            if (a[i] == b[i]) {
+                same++;
+            }
+        }
+        return (double) same / HASHES;
+    }
+
+    private static long bandKey(int[] signature, int band) {
+        long key = band;
+        for (int row = band * ROWS; row < (band + 1) * ROWS; row++) {
+            key = key * 0x100000001B3L + signature[row];
+        }
+        return key;
+    }
+
+    private static final class SessionLsh {
+        private final Map<Long, int[]> signatures = new HashMap<>();
+        private final Map<Long, List<Long>> buckets = new HashMap<>();
+        private final Map<Long, List<DuplicateMember>> duplicates = new LinkedHashMap<>();
+
+        synchronized Match register(long id, int[] signature, double threshold, Runnable store) {
+            Set<Long> compared = new HashSet<>();
+            Match best = null;
+            for (int band = 0; band < BANDS; band++) {
+                List<Long> bucket = buckets.get(bandKey(signature, band));
+                if (bucket == null) {
+                    continue;
+                }
+                for (Long candidate : bucket) {
+                    if (!compared.add(candidate)) {
+                        continue;
+                    }
+                    double similarity = similarity(signature, signatures.get(candidate));
+                    if (similarity >= threshold && (best == null || similarity > best.similarity)) {
+                        best = new Match(candidate, similarity);
+                    }
+                }
+            }
+            if (best != null) {
+                return best;
+            }
+            store.run();
+            index(id, signature);
+            return null;
+        }
+
+        synchronized void index(long id, int[] signature) {
+            signatures.put(id, signature);
+            for (int band = 0; band < BANDS; band++) {
+                buckets.computeIfAbsent(bandKey(signature, band), k -> new ArrayList<>(1)).add(id);
+            }
+        }
+
+        synchronized void recordDuplicate(long canonicalId, DuplicateMember member) {
+            duplicates.computeIfAbsent(canonicalId, c -> new ArrayList<>()).add(member);
+        }
+
+        synchronized List<DuplicateCluster> clusters() {
+            List<DuplicateCluster> clusters = new ArrayList<>(duplicates.size());
+            for (Map.Entry<Long, List<DuplicateMember>> entry : duplicates.entrySet()) {
+                DuplicateCluster cluster = new DuplicateCluster();
+                cluster.canonicalId = entry.getKey();
+                cluster.duplicates = new ArrayList<>(entry.getValue());
+                clusters.add(cluster);
+            }
+            clusters.sort((a, b) -> Integer.compare(b.duplicates.size(), a.duplicates.size()));
+            return clusters;
+        }
+    }
+}
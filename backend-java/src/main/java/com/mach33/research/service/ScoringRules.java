@@ -0,0 +1,133 @@
+package com.mach33.research.service;
+
+import com.mach33.research.util.KeywordMatcher;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One version of the rules behind an evidence item's initial reliability score:
+ * a base score per evidence type, adjusted by the first source-indicator group found in the source.
+ * Installed versions are never modified; tuning the weights installs a new version.
+ */
+public class ScoringRules {
+
+    public int version;
+    public LocalDateTime createdAt;
+    public Map<String, Double> typeScores;
+    public double defaultScore = 0.5;
+    public List<SourceAdjustment> sourceAdjustments;
+
+    private KeywordMatcher indicators;
+    private double[] adjustmentByPattern;
+    private int[] groupByPattern;
+
+    /**
+     * Source indicators in priority order; the first group with a match decides the adjustment
+     */
+    public static class SourceAdjustment {
+        public List<String> indicators;
+        public double adjustment;
+
+        public SourceAdjustment() {
+        }
+
+        SourceAdjustment(double adjustment, String... indicators) {
+            this.indicators = List.of(indicators);
+            this.adjustment = adjustment;
+        }
+    }
+
+    static ScoringRules defaults() {
+        ScoringRules rules = new ScoringRules();
+        rules.typeScores = new LinkedHashMap<>();
+        rules.typeScores.put("PRIMARY", 0.8);
+        rules.typeScores.put("SECONDARY", 0.6);
+        rules.typeScores.put("TERTIARY", 0.4);
+        rules.sourceAdjustments = List.of(
+            new SourceAdjustment(0.15, "peer-reviewed", "journal"),
+            new SourceAdjustment(0.1, "government", "official"),
+            new SourceAdjustment(0.05, "news", "media"),
+            new SourceAdjustment(-0.1, "blog", "opinion")
+        );
+        return rules.install(1);
+    }
+
+    /**
+     * A validated, immutable copy of these rules as the given version
+     */
+    ScoringRules install(int version) {
+        ScoringRules installed = new ScoringRules();
+        installed.version = version;
+        installed.createdAt = LocalDateTime.now();
+        installed.defaultScore = checkScore("defaultScore", defaultScore);
+        Map<String, Double> types = new LinkedHashMap<>();
+        if (typeScores != null) {
+            for (Map.Entry<String, Double> entry : typeScores.entrySet()) {
+                if (entry.getKey() == null || entry.getValue() == null) {
+                    throw new IllegalArgumentException("typeScores entries need a type and a score");
+                }
+                types.put(entry.getKey().toUpperCase(), checkScore(entry.getKey(), entry.getValue()));
+            }
+        }
+        installed.typeScores = Collections.unmodifiableMap(types);
+
+        List<SourceAdjustment> groups = new ArrayList<>();
+        List<String> patterns = new ArrayList<>();
+        List<Double> adjustments = new ArrayList<>();
+        List<Integer> groupIndexes = new ArrayList<>();
+        for (SourceAdjustment group : sourceAdjustments != null ? sourceAdjustments : List.<SourceAdjustment>of()) {
+            if (group == null || group.indicators == null || group.indicators.isEmpty()) {
+                throw new IllegalArgumentException("Each source adjustment needs at least one indicator");
+            }
+            if (group.adjustment < -1.0 || group.adjustment > 1.0) {
+                throw new IllegalArgumentException("Source adjustments must be within [-1, 1]");
+            }
+            for (String indicator : group.indicators) {
+                if (indicator == null || indicator.isBlank()) {
+                    throw new IllegalArgumentException("Source indicators must be non-empty");
+                }
+                patterns.add(indicator);
+                adjustments.add(group.adjustment);
+                groupIndexes.add(groups.size());
+            }
+            groups.add(new SourceAdjustment(group.adjustment, group.indicators.toArray(new String[0])));
+        }
+        installed.sourceAdjustments = List.copyOf(groups);
+        installed.indicators = patterns.isEmpty() ? null : KeywordMatcher.of(patterns.toArray(new String[0]));
+        installed.adjustmentByPattern = adjustments.stream().mapToDouble(Double::doubleValue).toArray();
+        installed.groupByPattern = groupIndexes.stream().mapToInt(Integer::intValue).toArray();
+        return installed;
+    }
+
+    /**
+     * Initial reliability for an item of this type from this source, within [0, 1]
+     */
+    double score(String type, String source) {
+        double score = type != null ? typeScores.getOrDefault(type.toUpperCase(), defaultScore) : defaultScore;
+        if (indicators != null) {
+            boolean[] matched = indicators.matchedPatterns(source);
+            int firstGroup = Integer.MAX_VALUE;
+            double adjustment = 0.0;
+            for (int pattern = 0; pattern < matched.length; pattern++) {
+                if (matched[pattern] && groupByPattern[pattern] < firstGroup) {
+                    firstGroup = groupByPattern[pattern];
+                    adjustment = adjustmentByPattern[pattern];
+                }
+            }
+            score += adjustment;
+        }
+        return Math.max(0.0, Math.min(1.0, score));
+    }
+
+    private static double checkScore(String name, double score) {
+        if (score < 0.0 || score > 1.0) {
+            throw new IllegalArgumentException("Score for " + name + " must be within [0, 1]");
+        }
+        return score;
+    }
+}
@@ -0,0 +1,410 @@
+package com.mach33.research.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mach33.research.config.PersistenceProperties;
+import com.mach33.research.util.RollingLatencyHistogram;
+import com.mach33.research.util.WriteAheadLog;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Durable record of every state change made by the in-memory services, kept in a write-ahead log.
+ * Services register a restore handler per record type when they are constructed and append a snapshot
+ * of each changed entity, as JSON, while they still hold that entity's lock, so the log orders the
+ * changes of one entity the way they were applied. Once every singleton exists, and before the web
+ * server starts, the log is replayed through the handlers to rebuild the services' maps, indexes and
+ * id generators; only then are appends accepted.
+ * Records registered with a key are snapshots of one entity: every snapshot interval the log is compacted
+ * to the last record for each key, so it grows with the state rather than with the number of changes.
+ * Records without a key, such as chat messages, are kept until their type's liveness check says the
+ * entity they describe was discarded.
+ */
+@Service
+public class StateJournal implements SmartInitializingSingleton {
+    
+    private static final Logger log = LoggerFactory.getLogger(StateJournal.class);
+    
+    private final ObjectMapper mapper;
+    private final WriteAheadLog wal; // null when persistence is disabled
+    private final Duration snapshotInterval;
+    private final Map<String, Handler<?>> handlers = new ConcurrentHashMap<>();
+    private ScheduledExecutorService snapshotScheduler;
+    private volatile boolean open;
+    private long replayedRecords;
+    private long skippedRecords;
+    private long replayMillis;
+    private volatile long snapshots;
+    private volatile LocalDateTime lastSnapshotAt;
+    private volatile long lastSnapshotMillis;
+    private volatile WriteAheadLog.Compaction lastCompaction;
+    
+    public StateJournal(PersistenceProperties properties, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.mapper = objectMapper;
+        this.snapshotInterval = properties.getSnapshotInterval();
+        if (!properties.isEnabled()) {
+            this.wal = null;
+            return;
+        }
+        try {
+            this.wal = new WriteAheadLog(Paths.get(properties.getDir()), properties.getDurability(),
+                    properties.getCommitWindow(), properties.getMaxBatch());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open write-ahead log in " + properties.getDir(), e);
+        }
+        registerMetrics(meterRegistry);
+    }
+    
+    private void registerMetrics(MeterRegistry registry) {
+        FunctionCounter.builder("research.journal.records", wal, WriteAheadLog::getRecords)
+                .description("Records written to the write-ahead log").register(registry);
+        FunctionCounter.builder("research.journal.bytes", wal, WriteAheadLog::getBytes)
+                .description("Bytes written to the write-ahead log").baseUnit("bytes").register(registry);
+        FunctionCounter.builder("research.journal.syncs", wal, WriteAheadLog::getSyncs)
+                .description("Write-ahead log fsyncs; records per fsync is the group commit batch size").register(registry);
+        Gauge.builder("research.journal.size", wal, WriteAheadLog::getSize)
+                .description("Size of the write-ahead log's snapshot and segments").baseUnit("bytes").register(registry);
+        FunctionCounter.builder("research.journal.snapshots", this, journal -> journal.snapshots)
+                .description("Compactions of the write-ahead log into a snapshot").register(registry);
+        Gauge.builder("research.journal.pending", wal, WriteAheadLog::getPending)
+                .description("Records waiting for the log writer").register(registry);
+        registerLatencyGauge(registry, "0.5", snapshot -> snapshot.p50Micros);
+        registerLatencyGauge(registry, "0.99", snapshot -> snapshot.p99Micros);
+        registerLatencyGauge(registry, "max", snapshot -> snapshot.maxMicros);
+    }
+    
+    private void registerLatencyGauge(MeterRegistry registry, String quantile,
+                                      ToLongFunction<RollingLatencyHistogram.Snapshot> micros) {
+        Gauge.builder("research.journal.commit.latency", wal, w -> micros.applyAsLong(w.commitLatency()) / 1000.0)
+                .tag("quantile", quantile).baseUnit("milliseconds")
+                .description("Time from append to fsync over the last minute").register(registry);
+    }
+    
+    /**
+     * Restore records of this type with the handler during replay. Handlers rebuild state without
+     * journaling it again, and run on one thread before any request is served.
+     * Every record of this type is kept when the log is compacted.
+     */
+    public <T> void register(String type, Class<T> recordType, Consumer<T> restore) {
+        register(type, recordType, null, restore);
+    }
+    
+    /**
+     * As above, for records that each hold the whole state of what the key names: compaction keeps only
+     * the last record for each key, so the handler must restore that state from it alone
+     */
+    public <T> void register(String type, Class<T> recordType, Function<T, String> key, Consumer<T> restore) {
+        register(type, recordType, key, null, restore);
+    }
+    
+    /**
+     * As above, also letting compaction drop records that live rejects. The check runs against the current
+     * state, concurrently with requests, and once it rejects a record it must go on rejecting it. The key may be null.
+     */
+    public <T> void register(String type, Class<T> recordType, Function<T, String> key, Predicate<T> live,
+                             Consumer<T> restore) {
+        if (handlers.putIfAbsent(type, new Handler<>(recordType, key, live, restore)) != null) {
+            throw new IllegalStateException("A restore handler is already registered for " + type);
+        }
+    }
+    
+    /**
+     * Replay the log into the registered handlers, then start accepting appends
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (wal == null) {
+            open = true;
+            return;
+        }
+        long started = System.nanoTime();
+        try {
+            replayedRecords = wal.replay(this::restore);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not replay write-ahead log " + wal.getPath(), e);
+        }
+        replayMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        wal.start();
+        open = true;
+        log.info("Replayed {} journal records ({} skipped) from {} in {} ms; durability {}",
+                replayedRecords, skippedRecords, wal.getPath(), replayMillis, wal.getDurability());
+        if (snapshotInterval.toMillis() > 0) {
+            snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "journal-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = snapshotInterval.toMillis();
+            snapshotScheduler.scheduleWithFixedDelay(this::snapshot, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    /**
+     * Compact the log into a snapshot now, unless nothing was journaled since the last one.
+     * Appends carry on meanwhile. Failures are logged; the log stays as it was and the next run retries.
+     */
+    public void snapshot() {
+        if (wal == null || !open) {
+            return;
+        }
+        long started = System.nanoTime();
+        WriteAheadLog.Compaction compaction;
+        try {
+            compaction = wal.compact(this::keyOf, this::isLive);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not snapshot write-ahead log {}", wal.getPath(), e);
+            return;
+        }
+        if (compaction == null) {
+            return;
+        }
+        lastSnapshotMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        lastSnapshotAt = LocalDateTime.now();
+        lastCompaction = compaction;
+        snapshots++;
+        log.info("Snapshot of {} kept {} of {} journal records ({} of {} bytes) in {} ms", wal.getPath(),
+                compaction.recordsKept(), compaction.recordsRead(), compaction.bytesKept(), compaction.bytesRead(),
+                lastSnapshotMillis);
+    }
+    
+    /**
+     * The record's type and key, or null for a record without a key; unreadable records are kept too
+     */
+    private String keyOf(byte[] payload) {
+        try (JsonParser parser = mapper.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT || !"type".equals(parser.nextFieldName())) {
+                return null;
+            }
+            String type = parser.nextTextValue();
+            return "key".equals(parser.nextFieldName()) ? type + "/" + parser.nextTextValue() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Whether compaction keeps the record, by its type's liveness check; unreadable records are kept
+     */
+    private boolean isLive(byte[] payload) {
+        try (JsonParser parser = mapper.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT || !"type".equals(parser.nextFieldName())) {
+                return true;
+            }
+            Handler<?> handler = handlers.get(parser.nextTextValue());
+            if (handler == null || handler.live() == null) {
+                return true;
+            }
+            return handler.isLive(mapper, mapper.readTree(payload).path("data"));
+        } catch (IOException | RuntimeException e) {
+            return true;
+        }
+    }
+    
+    /**
+     * Bind the record's data straight from the parser; Entry always writes the type first, then the key if any
+     */
+    private void restore(byte[] payload) {
+        String type = null;
+        try (JsonParser parser = mapper.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT || !"type".equals(parser.nextFieldName())) {
+                throw new IOException("Journal record does not start with its type");
+            }
+            type = parser.nextTextValue();
+            Handler<?> handler = handlers.get(type);
+            if (handler == null) {
+                log.warn("Skipping journal record of unknown type {}", type);
+                skippedRecords++;
+                return;
+            }
+            String field = parser.nextFieldName();
+            if ("key".equals(field)) {
+                parser.nextToken();
+                field = parser.nextFieldName();
+            }
+            if (!"data".equals(field)) {
+                throw new IOException("Journal record has no data");
+            }
+            parser.nextToken();
+            handler.restore(mapper, parser);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Skipping journal record of type {} that could not be restored", type, e);
+            skippedRecords++;
+        }
+    }
+    
+    /**
+     * Queue a snapshot of a changed entity and return its sequence number, or 0 when persistence is disabled.
+     * Call while holding the lock that orders changes to the entity, before applying the change; it never
+     * waits for the log writer. Wait for the write with awaitDurable after releasing the lock.
+     */
+    public long append(String type, Object record) {
+        if (wal == null) {
+            return 0;
+        }
+        if (!open) {
+            throw new IllegalStateException("State changes cannot be journaled while the journal is being replayed");
+        }
+        Handler<?> handler = handlers.get(type);
+        if (handler == null) {
+            throw new IllegalStateException("No restore handler is registered for " + type);
+        }
+        byte[] payload;
+        try {
+            payload = mapper.writeValueAsBytes(new Entry(type, handler.keyOf(record), record));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize journal record of type " + type, e);
+        }
+        return wal.append(payload);
+    }
+    
+    /**
+     * Wait until every record up to this sequence number is on disk, as far as the durability mode requires
+     */
+    public void awaitDurable(long sequence) {
+        if (wal != null && sequence > 0) {
+            wal.awaitDurable(sequence);
+        }
+    }
+    
+    /**
+     * Wait until the log writer has room, for changes that are not awaited with awaitDurable;
+     * call after releasing the entity's lock
+     */
+    public void awaitCapacity() {
+        if (wal != null && open) {
+            wal.awaitCapacity();
+        }
+    }
+    
+    /**
+     * Whether replay has finished and changes can be journaled
+     */
+    public boolean isOpen() {
+        return open;
+    }
+    
+    public JournalStatus getStatus() {
+        JournalStatus status = new JournalStatus();
+        status.enabled = wal != null;
+        if (wal == null) {
+            return status;
+        }
+        status.path = wal.getPath().toAbsolutePath().toString();
+        status.durability = wal.getDurability().name();
+        status.open = open;
+        status.failed = wal.isFailed();
+        status.replayedRecords = replayedRecords;
+        status.skippedRecords = skippedRecords;
+        status.replayMs = replayMillis;
+        status.sizeBytes = wal.getSize();
+        status.recordsWritten = wal.getRecords();
+        status.bytesWritten = wal.getBytes();
+        status.syncs = wal.getSyncs();
+        status.recordsPerSync = status.syncs == 0 ? 0.0 : (double) status.recordsWritten / status.syncs;
+        status.pending = wal.getPending();
+        RollingLatencyHistogram.Snapshot latency = wal.commitLatency();
+        status.recordsPerSecond = latency.count / 60.0;
+        status.commitLatencyP50Ms = latency.p50Micros / 1000.0;
+        status.commitLatencyP99Ms = latency.p99Micros / 1000.0;
+        status.commitLatencyMaxMs = latency.maxMicros / 1000.0;
+        status.snapshots = snapshots;
+        status.lastSnapshotAt = lastSnapshotAt;
+        status.lastSnapshotMs = lastSnapshotMillis;
+        WriteAheadLog.Compaction compaction = lastCompaction;
+        if (compaction != null) {
+            status.lastSnapshotRecordsRead = compaction.recordsRead();
+            status.lastSnapshotRecordsKept = compaction.recordsKept();
+        }
+        return status;
+    }
+    
+    @PreDestroy
+    public void close() {
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdown();
+            try {
+                snapshotScheduler.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (wal != null) {
+            try {
+                wal.close();
+            } catch (IOException e) {
+                log.warn("Could not close write-ahead log {}", wal.getPath(), e);
+            }
+        }
+    }
+    
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private record Entry(String type, String key, Object data) { }
+    
+    private record Handler<T>(Class<T> recordType, Function<T, String> key, Predicate<T> live, Consumer<T> restore) {
+        String keyOf(Object record) {
+            return key != null ? key.apply(recordType.cast(record)) : null;
+        }
+        
+        boolean isLive(ObjectMapper mapper, JsonNode data) throws IOException {
+            return live.test(mapper.treeToValue(data, recordType));
+        }
+        
+        void restore(ObjectMapper mapper, JsonParser data) throws IOException {
+            restore.accept(mapper.readValue(data, recordType));
+        }
+    }
+    
+    /**
+     * Write-ahead log state; throughput and commit latency cover the last minute
+     */
+    public static class JournalStatus {
+        public boolean enabled;
+        public String path;
+        public String durability; // SYNC, GROUP, ASYNC
+        public boolean open;
+        public boolean failed;
+        public long replayedRecords;
+        public long skippedRecords;
+        public long replayMs;
+        public long sizeBytes;
+        public long recordsWritten;
+        public long bytesWritten;
+        public long syncs;
+        public double recordsPerSync;
+        public int pending;
+        public double recordsPerSecond;
+        public double commitLatencyP50Ms;
+        public double commitLatencyP99Ms;
+        public double commitLatencyMaxMs;
+        public long snapshots;
+        public LocalDateTime lastSnapshotAt;
+        public long lastSnapshotMs;
+        public long lastSnapshotRecordsRead;
+        public long lastSnapshotRecordsKept;
+    }
+}
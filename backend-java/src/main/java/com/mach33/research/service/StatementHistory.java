@@ -0,0 +1,256 @@
+package com.mach33.research.service;
+
+import com.mach33.research.service.InMemoryResearchStatementService.DiffEdit;
+import com.mach33.research.service.InMemoryResearchStatementService.VersionSummary;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Every version of one statement's text, oldest first; version 1 is the original statement.
+ * Each version is stored as a delta against the one before it: ranges copied from the previous text
+ * and the words inserted between them, taken from a word diff. Every CHECKPOINT_INTERVAL versions the
+ * full text is kept instead, so any version is rebuilt by replaying at most CHECKPOINT_INTERVAL - 1 deltas.
+ */
+class StatementHistory {
+
+    private static final int CHECKPOINT_INTERVAL = 16;
+    private static final long MAX_DIFF_CELLS = 4_000_000;
+
+    private final List<Entry> entries = new ArrayList<>();
+    private String latest;
+
+    StatementHistory(String original, LocalDateTime createdAt) {
+        append(original, null, createdAt);
+    }
+
+    private static final class Entry {
+        final LocalDateTime createdAt;
+        final String notes;
+        final int length;
+        final String checkpoint; // full text, or null for a delta
+        // Delta: for each k, literals[k] (if any) followed by previous[copyFrom[k], copyFrom[k] + copyLength[k])
+        final String[] literals;
+        final int[] copyFrom;
+        final int[] copyLength;
+
+        Entry(LocalDateTime createdAt, String notes, String checkpoint) {
+            this.createdAt = createdAt;
+            this.notes = notes;
+            this.length = checkpoint.length();
+            this.checkpoint = checkpoint;
+            this.literals = null;
+            this.copyFrom = null;
+            this.copyLength = null;
+        }
+
+        Entry(LocalDateTime createdAt, String notes, int length, String[] literals, int[] copyFrom, int[] copyLength) {
+            this.createdAt = createdAt;
+            this.notes = notes;
+            this.length = length;
+            this.checkpoint = null;
+            this.literals = literals;
+            this.copyFrom = copyFrom;
+            this.copyLength = copyLength;
+        }
+
+        String apply(String previous) {
+            StringBuilder text = new StringBuilder(length);
+            for (int k = 0; k < copyFrom.length; k++) {
+                if (literals[k] != null) {
+                    text.append(literals[k]);
+                }
+                text.append(previous, copyFrom[k], copyFrom[k] + copyLength[k]);
+            }
+            return text.toString();
+        }
+    }
+
+    /**
+     * Encode current as copies from previous plus inserted literals, following the word diff
+     */
+    private static Entry delta(String previous, String current, String notes, LocalDateTime createdAt) {
+        List<String> literals = new ArrayList<>();
+        List<int[]> copies = new ArrayList<>();
+        String literal = null;
+        int position = 0;
+        for (DiffEdit edit : diff(previous, current)) {
+            switch (edit.op) {
+                case "EQUAL" -> {
+                    literals.add(literal);
+                    copies.add(new int[] {position, edit.text.length()});
+                    literal = null;
+                    position += edit.text.length();
+                }
+                case "DELETE" -> position += edit.text.length();
+                default -> literal = literal == null ? edit.text : literal + edit.text;
+            }
+        }
+        if (literal != null) {
+            literals.add(literal);
+            copies.add(new int[] {position, 0});
+        }
+        int[] copyFrom = new int[copies.size()];
+        int[] copyLength = new int[copies.size()];
+        for (int k = 0; k < copies.size(); k++) {
+            copyFrom[k] = copies.get(k)[0];
+            copyLength[k] = copies.get(k)[1];
+        }
+        return new Entry(createdAt, notes, current.length(), literals.toArray(new String[0]), copyFrom, copyLength);
+    }
+
+    /**
+     * Record a new version and return its number
+     */
+    synchronized int append(String text, String notes, LocalDateTime createdAt) {
+        String current = text != null ? text : "";
+        if (entries.size() % CHECKPOINT_INTERVAL == 0) {
+            entries.add(new Entry(createdAt, notes, current));
+        } else {
+            entries.add(delta(latest, current, notes, createdAt));
+        }
+        latest = current;
+        return entries.size();
+    }
+
+    /**
+     * Text of a version, rebuilt from the nearest checkpoint at or before it
+     */
+    synchronized String text(int version) {
+        checkVersion(version);
+        int index = version - 1;
+        if (index == entries.size() - 1) {
+            return latest;
+        }
+        int checkpoint = index - index % CHECKPOINT_INTERVAL;
+        String text = entries.get(checkpoint).checkpoint;
+        for (int i = checkpoint + 1; i <= index; i++) {
+            text = entries.get(i).apply(text);
+        }
+        return text;
+    }
+
+    synchronized String notes(int version) {
+        checkVersion(version);
+        return entries.get(version - 1).notes;
+    }
+
+    synchronized LocalDateTime createdAt(int version) {
+        checkVersion(version);
+        return entries.get(version - 1).createdAt;
+    }
+
+    synchronized List<VersionSummary> summaries() {
+        List<VersionSummary> summaries = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            VersionSummary summary = new VersionSummary();
+            summary.version = i + 1;
+            summary.createdAt = entry.createdAt;
+            summary.notes = entry.notes;
+            summary.length = entry.length;
+            summaries.add(summary);
+        }
+        return summaries;
+    }
+
+    private void checkVersion(int version) {
+        if (version < 1 || version > entries.size()) {
+            throw new RuntimeException("Version " + version + " not found; statement has " + entries.size() + " versions");
+        }
+    }
+
+    /**
+     * Word-level edits turning from into to: the longest common subsequence of words and their
+     * trailing whitespace is kept, everything else is deleted or inserted
+     */
+    static List<DiffEdit> diff(String from, String to) {
+        List<String> a = words(from);
+        List<String> b = words(to);
+        int start = 0;
+        while (start < a.size() && start < b.size() && a.get(start).equals(b.get(start))) {
+            start++;
+        }
+        int endA = a.size();
+        int endB = b.size();
+        while (endA > start && endB > start && a.get(endA - 1).equals(b.get(endB - 1))) {
+            endA--;
+            endB--;
+        }
+
+        List<DiffEdit> edits = new ArrayList<>();
+        add(edits, "EQUAL", a.subList(0, start));
+        int n = endA - start;
+        int m = endB - start;
+        if ((long) n * m > MAX_DIFF_CELLS) {
+            add(edits, "DELETE", a.subList(start, endA));
+            add(edits, "INSERT", b.subList(start, endB));
+        } else {
+            // common[i][j] = LCS length of a[start + i..endA) and b[start + j..endB)
+            int[][] common = new int[n + 1][m + 1];
+            for (int i = n - 1; i >= 0; i--) {
+                for (int j = m - 1; j >= 0; j--) {
+                    common[i][j] = a.get(start + i).equals(b.get(start + j))
+                            ? common[i + 1][j + 1] + 1
+                            : Math.max(common[i + 1][j], common[i][j + 1]);
+                }
+            }
+            int i = 0;
+            int j = 0;
+            while (i < n || j < m) {
+                if (i < n && j < m && a.get(start + i).equals(b.get(start + j))) {
+                    add(edits, "EQUAL", a.get(start + i++));
+                    j++;
+                } else if (i < n && (j == m || common[i + 1][j] >= common[i][j + 1])) {
+                    add(edits, "DELETE", a.get(start + i++));
+                } else {
+                    add(edits, "INSERT", b.get(start + j++));
+                }
+            }
+        }
+        add(edits, "EQUAL", a.subList(endA, a.size()));
+        return edits;
+    }
+
+    private static void add(List<DiffEdit> edits, String op, List<String> words) {
+        for (String word : words) {
+            add(edits, op, word);
+        }
+    }
+
+    /**
+     * Append to the last edit if it has the same op, so runs of words come back as one edit
+     */
+    private static void add(List<DiffEdit> edits, String op, String text) {
+        DiffEdit last = edits.isEmpty() ? null : edits.get(edits.size() - 1);
+        if (last != null && last.op.equals(op)) {
+            last.text += text;
+            return;
+        }
+        DiffEdit edit = new DiffEdit();
+        edit.op = op;
+        edit.text = text;
+        edits.add(edit);
+    }
+
+    /**
+     * Words with their trailing whitespace; leading whitespace is its own token
+     */
+    private static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        int start = 0;
+        int i = 0;
+        while (i < text.length()) {
+            while (i < text.length() && !Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            words.add(text.substring(start, i));
+            start = i;
+        }
+        return words;
+    }
+}
@@ -0,0 +1,199 @@
+package com.mach33.research.service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Trigram index over statement text, kept per session and across all sessions.
+ * A substring query can only match statements whose text contains every trigram of the query,
+ * so intersecting the query's postings narrows the candidates that callers then verify.
+ * A refinement replaces the statement's postings, so text it no longer has stops producing candidates.
+ */
+class StatementTrigramIndex {
+
+    static final int GRAM = 3;
+
+    private final Map<String, Grams> sessions = new ConcurrentHashMap<>();
+    private final Grams global = new Grams();
+
+    void add(long id, String sessionId, String text) {
+        if (text == null || text.length() < GRAM) {
+            return;
+        }
+        Set<Long> grams = grams(fold(text));
+        sessions.computeIfAbsent(sessionId, s -> new Grams()).add(id, grams);
+        global.add(id, grams);
+    }
+
+    /**
+     * Reindex a statement whose searchable texts changed from before to after: postings of trigrams
+     * only the old texts had are removed and trigrams new to it are added, in one step for readers
+     */
+    void replace(long id, String sessionId, List<String> before, List<String> after) {
+        Set<Long> old = grams(before);
+        Set<Long> current = grams(after);
+        Set<Long> removed = new HashSet<>(old);
+        removed.removeAll(current);
+        current.removeAll(old);
+        if (removed.isEmpty() && current.isEmpty()) {
+            return;
+        }
+        sessions.computeIfAbsent(sessionId, s -> new Grams()).replace(id, removed, current);
+        global.replace(id, removed, current);
+    }
+
+    /**
+     * Ids whose indexed text contains every trigram of the folded query, ascending;
+     * sessionId null searches all sessions. The query must be at least GRAM characters.
+     */
+    long[] candidates(String sessionId, String foldedQuery) {
+        Grams grams = sessionId != null ? sessions.get(sessionId) : global;
+        if (grams == null) {
+            return new long[0];
+        }
+        return grams.candidates(grams(foldedQuery));
+    }
+
+    /**
+     * Lowercase character by character, so offsets in the folded text match the original
+     */
+    static String fold(String text) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    private static Set<Long> grams(String folded) {
+        Set<Long> grams = new HashSet<>();
+        addGrams(folded, grams);
+        return grams;
+    }
+
+    private static Set<Long> grams(List<String> texts) {
+        Set<Long> grams = new HashSet<>();
+        for (String text : texts) {
+            if (text != null) {
+                addGrams(fold(text), grams);
+            }
+        }
+        return grams;
+    }
+
+    private static void addGrams(String folded, Set<Long> grams) {
+        for (int i = 0; i + GRAM <= folded.length(); i++) {
+            grams.add(((long) folded.charAt(i) << 32) | ((long) folded.charAt(i + 1) << 16) | folded.charAt(i + 2));
+        }
+    }
+
+    /**
+     * Statement ids in ascending order, without duplicates
+     */
+    private static final class Postings {
+        long[] ids = new long[2];
+        int size;
+
+        void add(long id) {
+            if (size > 0 && ids[size - 1] == id) {
+                return;
+            }
+            int at = size == 0 || ids[size - 1] < id ? -size - 1 : Arrays.binarySearch(ids, 0, size, id);
+            if (at >= 0) {
+                return;
+            }
+            int insert = -at - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, insert, ids, insert + 1, size - insert);
+            ids[insert] = id;
+            size++;
+        }
+
+        void remove(long id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at < 0) {
+                return;
+            }
+            System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+            size--;
+        }
+    }
+
+    private static final class Grams {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<Long, Postings> postings = new HashMap<>();
+
+        void add(long id, Set<Long> grams) {
+            lock.writeLock().lock();
+            try {
+                for (Long gram : grams) {
+                    postings.computeIfAbsent(gram, g -> new Postings()).add(id);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void replace(long id, Set<Long> removed, Set<Long> added) {
+            lock.writeLock().lock();
+            try {
+                for (Long gram : removed) {
+                    Postings list = postings.get(gram);
+                    if (list != null) {
+                        list.remove(id);
+                        if (list.size == 0) {
+                            postings.remove(gram);
+                        }
+                    }
+                }
+                for (Long gram : added) {
+                    postings.computeIfAbsent(gram, g -> new Postings()).add(id);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * Intersect the postings, shortest first
+         */
+        long[] candidates(Set<Long> grams) {
+            lock.readLock().lock();
+            try {
+                List<Postings> lists = new ArrayList<>(grams.size());
+                for (Long gram : grams) {
+                    Postings list = postings.get(gram);
+                    if (list == null) {
+                        return new long[0];
+                    }
+                    lists.add(list);
+                }
+                lists.sort(Comparator.comparingInt(p -> p.size));
+                Postings shortest = lists.get(0);
+                long[] result = new long[shortest.size];
+                int count = 0;
+                int[] cursors = new int[lists.size()];
+                candidates:
+                for (int c = 0; c < shortest.size; c++) {
+                    long id = shortest.ids[c];
+                    for (int l = 1; l < lists.size(); l++) {
+                        Postings other = lists.get(l);
+                        int at = Arrays.binarySearch(other.ids, cursors[l], other.size, id);
+                        if (at < 0) {
+                            cursors[l] = -at - 1;
+                            continue candidates;
+                        }
+                        cursors[l] = at + 1;
+                    }
+                    result[count++] = id;
+                }
+                return Arrays.copyOf(result, count);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+}
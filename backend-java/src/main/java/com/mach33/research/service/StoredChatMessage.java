@@ -0,0 +1,59 @@
+package com.mach33.research.service;
+
+import com.mach33.research.agent.AgentType;
+
+import java.util.Map;
+
+/**
+ * Compact, immutable form in which chat messages are stored. Enumerated fields are
+ * enum references, confidence and latency are primitives and the timestamp is epoch
+ * milliseconds. The session id is the key the message is stored under and is not
+ * repeated per message. Only AUTO and cached replies carry an extras map.
+ * Converted to ChatMessageDto at the controller boundary.
+ */
+public final class StoredChatMessage {
+    
+    public enum Sender { USER, AI }
+    
+    public enum MessageType { TEXT, IMAGE, FILE }
+    
+    public final long id;
+    public final String content;
+    public final Sender sender;
+    public final AgentType agentType;         // null for user messages
+    public final MessageType messageType;
+    public final long epochMillis;
+    public final double confidence;           // NaN when not applicable
+    public final int latencyMillis;           // -1 when not applicable
+    public final String model;                // shared per provider, null for user messages
+    public final Map<String, Object> extras;  // null unless the reply carries extra metadata
+    
+    public StoredChatMessage(long id, String content, Sender sender, AgentType agentType, MessageType messageType,
+                             long epochMillis, double confidence, int latencyMillis, String model,
+                             Map<String, Object> extras) {
+        this.id = id;
+        this.content = content;
+        this.sender = sender;
+        this.agentType = agentType;
+        this.messageType = messageType;
+        this.epochMillis = epochMillis;
+        this.confidence = confidence;
+        this.latencyMillis = latencyMillis;
+        this.model = model;
+        this.extras = extras;
+    }
+    
+    /**
+     * Rough retained heap size: the object itself, its UTF-16 content and any extras entries
+     */
+    long estimatedBytes() {
+        long bytes = 64;
+        if (content != null) {
+            bytes += 40 + 2L * content.length();
+        }
+        if (extras != null) {
+            bytes += 64 + 96L * extras.size();
+        }
+        return bytes;
+    }
+}
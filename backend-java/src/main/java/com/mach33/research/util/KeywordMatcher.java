@@ -0,0 +1,215 @@
+package com.mach33.research.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Case-insensitive multi-pattern substring matcher (Aho-Corasick).
+ * Scans text once for all patterns, folding case per character, so callers
+ * never need a lowercase copy of the input. Instances are immutable and thread-safe.
+ */
+public final class KeywordMatcher {
+
+    private static final int ROOT = 0;
+    private static final int ASCII = 128;
+    private static final int[] NO_PATTERNS = new int[0];
+
+    private final String[] patterns;
+    private final char[][] edgeChars;    // per node, sorted
+    private final int[][] edgeTargets;   // per node, aligned with edgeChars
+    private final int[] fail;
+    private final int[][] patternsAt;    // patterns ending exactly at each node
+    private final int[] outputLink;      // nearest node on the fail chain that ends a pattern, or -1
+    private final boolean[] emits;       // node ends a pattern itself or via its fail chain
+    private final int[] asciiNext;       // full DFA transitions for ASCII input, case folded, [node * ASCII + c]
+
+    private KeywordMatcher(String[] patterns) {
+        this.patterns = patterns.clone();
+
+        List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        List<List<Integer>> ends = new ArrayList<>();
+        children.add(new TreeMap<>());
+        ends.add(new ArrayList<>());
+
+        for (int p = 0; p < patterns.length; p++) {
+            String pattern = patterns[p];
+            if (pattern == null || pattern.isEmpty()) {
+                throw new IllegalArgumentException("Patterns must be non-empty");
+            }
+            int node = ROOT;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = Character.toLowerCase(pattern.charAt(i));
+                Integer next = children.get(node).get(c);
+                if (next == null) {
+                    next = children.size();
+                    children.add(new TreeMap<>());
+                    ends.add(new ArrayList<>());
+                    children.get(node).put(c, next);
+                }
+                node = next;
+            }
+            ends.get(node).add(p);
+        }
+
+        int nodeCount = children.size();
+        edgeChars = new char[nodeCount][];
+        edgeTargets = new int[nodeCount][];
+        patternsAt = new int[nodeCount][];
+        for (int node = 0; node < nodeCount; node++) {
+            TreeMap<Character, Integer> edges = children.get(node);
+            edgeChars[node] = new char[edges.size()];
+            edgeTargets[node] = new int[edges.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                edgeChars[node][i] = edge.getKey();
+                edgeTargets[node][i] = edge.getValue();
+                i++;
+            }
+            List<Integer> endingHere = ends.get(node);
+            patternsAt[node] = endingHere.isEmpty()
+                    ? NO_PATTERNS
+                    : endingHere.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        // Breadth-first so every node's fail target is final before its children are visited
+        fail = new int[nodeCount];
+        outputLink = new int[nodeCount];
+        Arrays.fill(outputLink, -1);
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : edgeTargets[ROOT]) {
+            fail[child] = ROOT;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (int i = 0; i < edgeChars[node].length; i++) {
+                char c = edgeChars[node][i];
+                int child = edgeTargets[node][i];
+                int state = fail[node];
+                int target = child(state, c);
+                while (target < 0 && state != ROOT) {
+                    state = fail[state];
+                    target = child(state, c);
+                }
+                fail[child] = target >= 0 ? target : ROOT;
+                outputLink[child] = patternsAt[fail[child]].length > 0 ? fail[child] : outputLink[fail[child]];
+                queue.add(child);
+            }
+        }
+
+        emits = new boolean[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            emits[node] = patternsAt[node].length > 0 || outputLink[node] >= 0;
+        }
+
+        // Fill rows breadth-first: a fail target is always shallower, so its row is already complete
+        asciiNext = new int[nodeCount * ASCII];
+        queue.add(ROOT);
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (int c = 0; c < ASCII; c++) {
+                int target = child(node, Character.toLowerCase((char) c));
+                if (target < 0) {
+                    target = node == ROOT ? ROOT : asciiNext[fail[node] * ASCII + c];
+                }
+                asciiNext[node * ASCII + c] = target;
+            }
+            for (int child : edgeTargets[node]) {
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * Build a matcher for the given patterns; pattern indexes follow argument order
+     */
+    public static KeywordMatcher of(String... patterns) {
+        return new KeywordMatcher(patterns);
+    }
+
+    public int size() {
+        return patterns.length;
+    }
+
+    public String pattern(int index) {
+        return patterns[index];
+    }
+
+    public boolean containsAny(CharSequence text) {
+        return text != null && containsAny(text, 0, text.length());
+    }
+
+    /**
+     * Whether any pattern occurs within text[start, end)
+     */
+    public boolean containsAny(CharSequence text, int start, int end) {
+        int state = ROOT;
+        for (int i = start; i < end; i++) {
+            state = next(state, text.charAt(i));
+            if (emits[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean[] matchedPatterns(CharSequence text) {
+        return text == null ? new boolean[patterns.length] : matchedPatterns(text, 0, text.length());
+    }
+
+    /**
+     * Flags, by pattern index, which patterns occur at least once within text[start, end)
+     */
+    public boolean[] matchedPatterns(CharSequence text, int start, int end) {
+        boolean[] matched = new boolean[patterns.length];
+        int state = ROOT;
+        for (int i = start; i < end; i++) {
+            state = next(state, text.charAt(i));
+            if (!emits[state]) {
+                continue;
+            }
+            for (int node = state; node >= 0; node = outputLink[node]) {
+                for (int p : patternsAt[node]) {
+                    matched[p] = true;
+                }
+            }
+        }
+        return matched;
+    }
+
+    private int next(int state, char c) {
+        return c < ASCII ? asciiNext[state * ASCII + c] : step(state, Character.toLowerCase(c));
+    }
+
+    private int step(int state, char c) {
+        while (true) {
+            int next = child(state, c);
+            if (next >= 0) {
+                return next;
+            }
+            if (state == ROOT) {
+                return ROOT;
+            }
+            state = fail[state];
+        }
+    }
+
+    private int child(int node, char c) {
+        char[] chars = edgeChars[node];
+        if (chars.length <= 8) {
+            for (int i = 0; i < chars.length; i++) {
+                if (chars[i] == c) {
+                    return edgeTargets[node][i];
+                }
+            }
+            return -1;
+        }
+        int index = Arrays.binarySearch(chars, c);
+        return index >= 0 ? edgeTargets[node][index] : -1;
+    }
+}
@@ -0,0 +1,156 @@
+package com.mach33.research.util;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram over a rolling time window.
+ * The window is a ring of time slices; each slice holds log-linear buckets
+ * (exact below 16us, then 8 sub-buckets per power of two, so within 12.5%)
+ * updated with atomic increments. Recording never blocks; a sample that races
+ * with the rotation of its slice may be dropped.
+ */
+public final class RollingLatencyHistogram {
+
+    private static final int EXACT_BUCKETS = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 39;  // about 6 days in microseconds
+    private static final long MAX_MICROS = (1L << (MAX_EXPONENT + 1)) - 1;
+    private static final int BUCKETS = EXACT_BUCKETS + (MAX_EXPONENT - 3) * SUB_BUCKETS;
+
+    private final Slice[] slices;
+    private final long sliceNanos;
+
+    public RollingLatencyHistogram(Duration window, int sliceCount) {
+        if (sliceCount < 2) {
+            throw new IllegalArgumentException("At least two slices are required");
+        }
+        this.slices = new Slice[sliceCount];
+        for (int i = 0; i < sliceCount; i++) {
+            slices[i] = new Slice();
+        }
+        this.sliceNanos = Math.max(1, window.toNanos() / sliceCount);
+    }
+
+    public Duration getWindow() {
+        return Duration.ofNanos(sliceNanos * slices.length);
+    }
+
+    /**
+     * Record a completed call and whether it failed
+     */
+    public void record(long elapsedNanos, boolean failed) {
+        long micros = Math.min(MAX_MICROS, Math.max(0, elapsedNanos / 1000));
+        Slice slice = current(System.nanoTime());
+        slice.counts.incrementAndGet(bucketOf(micros));
+        if (failed) {
+            slice.failures.incrementAndGet();
+        }
+        slice.maxMicros.accumulateAndGet(micros, Math::max);
+    }
+
+    /**
+     * Sum the slices still inside the window
+     */
+    public Snapshot snapshot() {
+        long nowEpoch = Math.floorDiv(System.nanoTime(), sliceNanos);
+        long[] counts = new long[BUCKETS];
+        Snapshot snapshot = new Snapshot();
+        for (Slice slice : slices) {
+            long epoch = slice.epoch.get();
+            if (epoch > nowEpoch - slices.length && epoch <= nowEpoch) {
+                for (int i = 0; i < BUCKETS; i++) {
+                    long count = slice.counts.get(i);
+                    counts[i] += count;
+                    snapshot.count += count;
+                }
+                snapshot.failures += slice.failures.get();
+                snapshot.maxMicros = Math.max(snapshot.maxMicros, slice.maxMicros.get());
+            }
+        }
+        snapshot.p50Micros = percentile(counts, snapshot.count, 0.50, snapshot.maxMicros);
+        snapshot.p95Micros = percentile(counts, snapshot.count, 0.95, snapshot.maxMicros);
+        snapshot.p99Micros = percentile(counts, snapshot.count, 0.99, snapshot.maxMicros);
+        return snapshot;
+    }
+
+    private Slice current(long nowNanos) {
+        long epoch = Math.floorDiv(nowNanos, sliceNanos);
+        Slice slice = slices[Math.floorMod(epoch, slices.length)];
+        long seen = slice.epoch.get();
+        if (seen < epoch && slice.epoch.compareAndSet(seen, epoch)) {
+            slice.reset();
+        }
+        return slice;
+    }
+
+    /**
+     * Upper bound of the bucket holding the q-th sample, capped at the observed max
+     */
+    private static long percentile(long[] counts, long total, double q, long maxMicros) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), maxMicros);
+            }
+        }
+        return maxMicros;
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < EXACT_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return EXACT_BUCKETS + (exponent - 4) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < EXACT_BUCKETS) {
+            return bucket;
+        }
+        int exponent = 4 + (bucket - EXACT_BUCKETS) / SUB_BUCKETS;
+        int sub = (bucket - EXACT_BUCKETS) % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((long) (SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+
+    private static final class Slice {
+        final AtomicLong epoch = new AtomicLong(Long.MIN_VALUE);
+        final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong maxMicros = new AtomicLong();
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts.set(i, 0);
+            }
+            failures.set(0);
+            maxMicros.set(0);
+        }
+    }
+
+    /**
+     * Window totals and latency percentiles in microseconds
+     */
+    public static final class Snapshot {
+        public long count;
+        public long failures;
+        public long p50Micros;
+        public long p95Micros;
+        public long p99Micros;
+        public long maxMicros;
+
+        public double errorRate() {
+            return count == 0 ? 0.0 : (double) failures / count;
+        }
+    }
+}
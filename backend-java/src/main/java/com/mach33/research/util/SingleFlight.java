@@ -0,0 +1,123 @@
+package com.mach33.research.util;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls with the same key into one execution.
+ * The first caller for a key runs the work; callers arriving while it is in flight,
+ * or within the dedupe window after it succeeded, receive the same result.
+ * Failures are never reused, so a retry after an error runs the work again.
+ */
+public final class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+    private final long windowNanos;
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * @param dedupeWindow how long a successful result keeps answering identical calls; zero for in-flight only
+     */
+    public SingleFlight(Duration dedupeWindow) {
+        this.windowNanos = Math.max(0, dedupeWindow.toNanos());
+    }
+
+    /**
+     * Run or join the flight for key. The work is invoked on the calling thread only if this caller leads.
+     */
+    public CompletableFuture<V> run(K key, Supplier<? extends CompletionStage<V>> work) {
+        while (true) {
+            Flight<V> existing = flights.get(key);
+            if (existing != null && existing.reusable(windowNanos)) {
+                coalesced.increment();
+                return existing.future.copy();
+            }
+            Flight<V> flight = new Flight<>();
+            boolean leading = existing == null
+                    ? flights.putIfAbsent(key, flight) == null
+                    : flights.replace(key, existing, flight);
+            if (!leading) {
+                continue;
+            }
+            executions.increment();
+            CompletionStage<V> stage;
+            try {
+                stage = work.get();
+            } catch (Throwable t) {
+                stage = CompletableFuture.failedFuture(t);
+            }
+            stage.whenComplete((value, error) -> land(key, flight, value, error));
+            return flight.future.copy();
+        }
+    }
+
+    /**
+     * Blocking form of run for synchronous work; unchecked exceptions from the work are rethrown as-is
+     */
+    public V execute(K key, Supplier<V> work) {
+        try {
+            return run(key, () -> CompletableFuture.completedFuture(work.get())).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void land(K key, Flight<V> flight, V value, Throwable error) {
+        flight.completedNanos = System.nanoTime();
+        if (error != null) {
+            flights.remove(key, flight);
+            flight.future.completeExceptionally(error);
+            return;
+        }
+        flight.future.complete(value);
+        if (windowNanos == 0) {
+            flights.remove(key, flight);
+        } else {
+            CompletableFuture.delayedExecutor(windowNanos, TimeUnit.NANOSECONDS)
+                    .execute(() -> flights.remove(key, flight));
+        }
+    }
+
+    /**
+     * Number of times the work actually ran
+     */
+    public long getExecutions() {
+        return executions.sum();
+    }
+
+    /**
+     * Number of calls answered by another caller's execution
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public int inFlight() {
+        return flights.size();
+    }
+
+    private static final class Flight<V> {
+        final CompletableFuture<V> future = new CompletableFuture<>();
+        volatile long completedNanos;
+
+        boolean reusable(long windowNanos) {
+            if (!future.isDone()) {
+                return true;
+            }
+            return !future.isCompletedExceptionally() && System.nanoTime() - completedNanos < windowNanos;
+        }
+    }
+}
@@ -0,0 +1,630 @@
+package com.mach33.research.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of opaque records with group commit.
+ * Each record is framed as [length][CRC32C][payload]. Appenders add framed records to a pending
+ * queue under a short lock and get a sequence number, without ever waiting for the writer, so they may
+ * append while holding their own locks; they wait in awaitDurable or awaitCapacity once they have
+ * released them. A single writer thread takes up to maxBatch
+ * records at a time, writes them with one write and one fsync, and advances the durable sequence.
+ * The durability mode decides how long the writer gathers a batch and whether appenders wait for it:
+ * SYNC fsyncs every record on its own; GROUP shares each fsync among the records queued while the previous
+ * one ran and, once appends are seen to be concurrent, waits up to the commit window for more; ASYNC
+ * returns before the fsync, so a crash can lose the records of the batches still queued.
+ * The log is a directory of numbered segment files, of which only the newest is written to, plus at most
+ * one snapshot: compact seals the current segment and rewrites the previous snapshot and the sealed
+ * segments into a new snapshot that keeps only the last record for each key, and only records still
+ * live, then deletes its inputs.
+ * On open, replay reads the snapshot and the segments after it, and cuts off a torn tail left in the
+ * newest segment by a crash mid-write.
+ */
+public final class WriteAheadLog implements Closeable {
+
+    public enum Durability { SYNC, GROUP, ASYNC }
+
+    public static final int MAX_RECORD_BYTES = 64 * 1024 * 1024;
+    private static final int HEADER_BYTES = 8;
+    private static final int PENDING_BATCHES = 8;
+    private static final int OVERFLOW_FACTOR = 4;
+    private static final int QUIET_FRACTION = 8;
+    private static final Pattern FILE_NAME = Pattern.compile("(segment|snapshot)-(\\d+)\\.wal");
+
+    private final Path dir;
+    private final Durability durability;
+    private final long commitWindowNanos;
+    private final int maxBatch;
+    private final RollingLatencyHistogram commitLatency = new RollingLatencyHistogram(Duration.ofMinutes(1), 12);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition recordsPending = lock.newCondition();
+    private final Condition batchCommitted = lock.newCondition();
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    private long appendedSequence;
+    private volatile long durableSequence;
+    private volatile IOException failure;
+    private boolean closed;
+    private Thread writer;
+
+    // The segment being written; guarded by fileLock, which the writer holds for each batch
+    private final ReentrantLock fileLock = new ReentrantLock();
+    private FileChannel channel;
+    private long segment;
+    private long snapshotSegment; // last segment folded into the snapshot, 0 when there is none
+    private volatile long size; // bytes in the current segment
+    private volatile long sealedBytes; // bytes in the snapshot and the sealed segments
+
+    // Written by the writer thread only, once replay has finished
+    private volatile long records;
+    private volatile long bytes;
+    private volatile long syncs;
+
+    /**
+     * Open the log in this directory, creating it if needed. Files left by a compaction that did not
+     * finish are removed.
+     */
+    public WriteAheadLog(Path dir, Durability durability, Duration commitWindow, int maxBatch) throws IOException {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("maxBatch must be at least 1");
+        }
+        Files.createDirectories(dir);
+        this.dir = dir;
+        this.durability = durability;
+        this.commitWindowNanos = commitWindow.toNanos();
+        this.maxBatch = maxBatch;
+
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        TreeMap<Long, Path> snapshots = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                Matcher matcher = FILE_NAME.matcher(name);
+                if (matcher.matches()) {
+                    (matcher.group(1).equals("segment") ? segments : snapshots).put(Long.parseLong(matcher.group(2)), file);
+                } else if (name.endsWith(".wal.tmp")) {
+                    Files.delete(file);
+                }
+            }
+        }
+        snapshotSegment = snapshots.isEmpty() ? 0 : snapshots.lastKey();
+        for (Map.Entry<Long, Path> older : snapshots.headMap(snapshotSegment).entrySet()) {
+            Files.delete(older.getValue());
+        }
+        for (Map.Entry<Long, Path> folded : segments.headMap(snapshotSegment, true).entrySet()) {
+            Files.delete(folded.getValue());
+        }
+        segment = Math.max(snapshotSegment + 1, segments.isEmpty() ? 0 : segments.lastKey());
+        channel = FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private record Pending(byte[] framed, long enqueuedNanos) { }
+
+    /**
+     * Outcome of a compaction: records and bytes it read from the previous snapshot and the sealed
+     * segments, and what the new snapshot kept of them
+     */
+    public record Compaction(long recordsRead, long recordsKept, long bytesRead, long bytesKept) { }
+
+    /**
+     * Hand every intact record to the handler in log order and return how many there were.
+     * A partial or corrupt record ends the newest segment: it and anything after it are truncated.
+     * In the snapshot or a sealed segment, which were fsynced before the next file was started,
+     * it is an error. Must be called before start.
+     */
+    public long replay(Consumer<byte[]> handler) throws IOException {
+        long count = 0;
+        long sealed = 0;
+        for (Path file : sealedFiles(segment - 1)) {
+            try (FileChannel input = FileChannel.open(file, StandardOpenOption.READ)) {
+                long[] valid = new long[1];
+                count += read(input, valid, handler);
+                if (valid[0] < input.size()) {
+                    throw new IOException("Corrupt record in " + file + " at offset " + valid[0]);
+                }
+                sealed += valid[0];
+            }
+        }
+        long[] valid = new long[1];
+        count += read(channel, valid, handler);
+        if (channel.size() > valid[0]) {
+            channel.truncate(valid[0]);
+            channel.force(true);
+        }
+        channel.position(valid[0]);
+        size = valid[0];
+        sealedBytes = sealed;
+        return count;
+    }
+
+    /**
+     * Hand the file's intact records to the handler from the start up to the first partial or corrupt one,
+     * and return how many there were; valid[0] is set to the number of bytes they take up
+     */
+    private static long read(FileChannel file, long[] valid, Consumer<byte[]> handler) throws IOException {
+        long count = 0;
+        CRC32C crc = new CRC32C();
+        InputStream channelInput = Channels.newInputStream(file.position(0));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(channelInput, 1 << 20));
+        while (true) {
+            byte[] payload;
+            try {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length < 0 || length > MAX_RECORD_BYTES) {
+                    break;
+                }
+                payload = new byte[length];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+            } catch (EOFException e) {
+                break;
+            }
+            handler.accept(payload);
+            valid[0] += HEADER_BYTES + payload.length;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * The snapshot, if any, then the segments after it up to and including lastSegment
+     */
+    private List<Path> sealedFiles(long lastSegment) {
+        List<Path> files = new ArrayList<>();
+        if (snapshotSegment > 0) {
+            files.add(snapshotPath(snapshotSegment));
+        }
+        for (long number = snapshotSegment + 1; number <= lastSegment; number++) {
+            if (Files.exists(segmentPath(number))) {
+                files.add(segmentPath(number));
+            }
+        }
+        return files;
+    }
+
+    private Path segmentPath(long number) {
+        return dir.resolve(String.format("segment-%010d.wal", number));
+    }
+
+    private Path snapshotPath(long number) {
+        return dir.resolve(String.format("snapshot-%010d.wal", number));
+    }
+
+    /**
+     * Start accepting appends
+     */
+    public synchronized void start() {
+        if (writer != null) {
+            return;
+        }
+        writer = new Thread(this::writeLoop, "wal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queue a record and return its sequence number; the record is durable once awaitDurable returns for it.
+     * Never blocks. Callers that waited in awaitDurable or awaitCapacity keep the queue near PENDING_BATCHES
+     * batches; if it still reaches OVERFLOW_FACTOR times that, the record is refused.
+     */
+    public long append(byte[] payload) {
+        if (payload.length > MAX_RECORD_BYTES) {
+            throw new IllegalArgumentException("Record of " + payload.length + " bytes exceeds " + MAX_RECORD_BYTES);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        byte[] framed = new byte[HEADER_BYTES + payload.length];
+        ByteBuffer.wrap(framed).putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+
+        lock.lock();
+        try {
+            if (writer == null || closed) {
+                throw new IllegalStateException("Write-ahead log " + dir + " is not open");
+            }
+            checkFailure();
+            if (pending.size() >= maxBatch * PENDING_BATCHES * OVERFLOW_FACTOR) {
+                throw new IllegalStateException("Write-ahead log " + dir + " has " + pending.size() + " records queued");
+            }
+            pending.add(new Pending(framed, System.nanoTime()));
+            if (pending.size() == 1 || pending.size() == maxBatch) {
+                recordsPending.signal();
+            }
+            return ++appendedSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until the record with this sequence number has been fsynced; in ASYNC mode, only until the
+     * queue has room. Throws if the log failed before the record was written.
+     */
+    public void awaitDurable(long sequence) {
+        if (sequence <= durableSequence) {
+            return;
+        }
+        if (durability == Durability.ASYNC) {
+            awaitCapacity();
+            return;
+        }
+        lock.lock();
+        try {
+            while (durableSequence < sequence && failure == null) {
+                batchCommitted.awaitUninterruptibly();
+            }
+            if (durableSequence < sequence) {
+                checkFailure();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait while several batches are already waiting for the writer. For appenders that do not wait
+     * for durability; call without holding locks that other appenders need.
+     */
+    public void awaitCapacity() {
+        lock.lock();
+        try {
+            while (pending.size() >= maxBatch * PENDING_BATCHES && failure == null && !closed) {
+                batchCommitted.awaitUninterruptibly();
+            }
+            checkFailure();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isOpen() {
+        lock.lock();
+        try {
+            return writer != null && !closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkFailure() {
+        IOException error = failure;
+        if (error != null) {
+            throw new UncheckedIOException("Write-ahead log " + dir + " failed", error);
+        }
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        int lastBatch = 0;
+        while (true) {
+            lock.lock();
+            try {
+                while (pending.isEmpty() && !closed) {
+                    recordsPending.awaitUninterruptibly();
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+                // A lone appender is written at once; the window only pays off when others are appending too
+                boolean gather = durability == Durability.ASYNC || (durability == Durability.GROUP && lastBatch > 1);
+                if (gather) {
+                    long deadline = pending.peek().enqueuedNanos + commitWindowNanos;
+                    long quiet = Math.max(1, commitWindowNanos / QUIET_FRACTION);
+                    int seen = pending.size();
+                    long wait;
+                    while (pending.size() < maxBatch && !closed && (wait = deadline - System.nanoTime()) > 0) {
+                        try {
+                            recordsPending.awaitNanos(Math.min(wait, quiet));
+                        } catch (InterruptedException e) {
+                            break;
+                        }
+                        // Nothing new for a while: the other appenders are most likely waiting on this batch
+                        if (pending.size() == seen) {
+                            break;
+                        }
+                        seen = pending.size();
+                    }
+                }
+                int count = durability == Durability.SYNC ? 1 : Math.min(pending.size(), maxBatch);
+                for (int i = 0; i < count; i++) {
+                    batch.add(pending.poll());
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                write(batch);
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+            long now = System.nanoTime();
+            for (Pending record : batch) {
+                commitLatency.record(now - record.enqueuedNanos, false);
+            }
+            lock.lock();
+            try {
+                durableSequence += batch.size();
+                batchCommitted.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            lastBatch = batch.size();
+            batch.clear();
+        }
+    }
+
+    /**
+     * Write a batch at the end of the current segment with one gathering write, then fsync it
+     */
+    private void write(List<Pending> batch) throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+        long batchBytes = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ByteBuffer.wrap(batch.get(i).framed);
+            batchBytes += buffers[i].remaining();
+        }
+        fileLock.lock();
+        try {
+            long written = 0;
+            while (written < batchBytes) {
+                written += channel.write(buffers);
+            }
+            channel.force(false);
+            size += batchBytes;
+        } finally {
+            fileLock.unlock();
+        }
+        records += batch.size();
+        bytes += batchBytes;
+        syncs++;
+    }
+
+    /**
+     * Seal the current segment and fold it, the sealed segments before it and the previous snapshot
+     * into a new snapshot that keeps, in log order, the last record for each key and every record
+     * without one (keyOf returns null). Appends carry on into a new segment meanwhile; only the switch
+     * to it waits for the batch being written. The inputs are deleted once the snapshot is on disk.
+     * Returns null, without sealing anything, if nothing was written since the last compaction.
+     */
+    public Compaction compact(Function<byte[], String> keyOf) throws IOException {
+        return compact(keyOf, payload -> true);
+    }
+
+    /**
+     * As above, also dropping every record that live rejects, such as one whose entity has since been discarded
+     */
+    public synchronized Compaction compact(Function<byte[], String> keyOf, Predicate<byte[]> live) throws IOException {
+        long sealed;
+        fileLock.lock();
+        try {
+            if (!isOpen()) {
+                throw new IllegalStateException("Write-ahead log " + dir + " is not open");
+            }
+            if (size == 0) {
+                return null;
+            }
+            FileChannel next = FileChannel.open(segmentPath(segment + 1),
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            syncDirectory();
+            channel.close();
+            channel = next;
+            sealedBytes += size;
+            size = 0;
+            sealed = segment++;
+        } finally {
+            fileLock.unlock();
+        }
+
+        List<Path> inputs = sealedFiles(sealed);
+        Map<String, Long> lastByKey = new HashMap<>();
+        long[] ordinal = new long[1];
+        long bytesRead = 0;
+        for (Path input : inputs) {
+            bytesRead += Files.size(input);
+            forEachRecord(input, payload -> {
+                String key = keyOf.apply(payload);
+                if (key != null) {
+                    lastByKey.put(key, ordinal[0]);
+                }
+                ordinal[0]++;
+            });
+        }
+
+        Path snapshot = snapshotPath(sealed);
+        Path temporary = dir.resolve(snapshot.getFileName() + ".tmp");
+        long[] kept = new long[2];
+        ordinal[0] = 0;
+        try (FileChannel output = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(output), 1 << 20));
+            CRC32C crc = new CRC32C();
+            for (Path input : inputs) {
+                forEachRecord(input, payload -> {
+                    String key = keyOf.apply(payload);
+                    if ((key == null || lastByKey.get(key) == ordinal[0]) && live.test(payload)) {
+                        crc.reset();
+                        crc.update(payload);
+                        try {
+                            out.writeInt(payload.length);
+                            out.writeInt((int) crc.getValue());
+                            out.write(payload);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        kept[0]++;
+                        kept[1] += HEADER_BYTES + payload.length;
+                    }
+                    ordinal[0]++;
+                });
+            }
+            out.flush();
+            output.force(true);
+        } catch (UncheckedIOException e) {
+            Files.deleteIfExists(temporary);
+            throw e.getCause();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+
+        // Replay now starts from the new snapshot, so the inputs are no longer read
+        long previousSnapshot = snapshotSegment;
+        snapshotSegment = sealed;
+        sealedBytes = kept[1];
+        for (Path input : inputs) {
+            Files.deleteIfExists(input);
+        }
+        if (previousSnapshot > 0) {
+            Files.deleteIfExists(snapshotPath(previousSnapshot));
+        }
+        return new Compaction(ordinal[0], kept[0], bytesRead, kept[1]);
+    }
+
+    /**
+     * Read a sealed file's records; a torn or corrupt record is an error there
+     */
+    private static void forEachRecord(Path file, Consumer<byte[]> handler) throws IOException {
+        try (FileChannel input = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] valid = new long[1];
+            read(input, valid, handler);
+            if (valid[0] < input.size()) {
+                throw new IOException("Corrupt record in " + file + " at offset " + valid[0]);
+            }
+        }
+    }
+
+    /**
+     * Make a file creation or rename durable; not every platform can fsync a directory
+     */
+    private void syncDirectory() {
+        try (FileChannel directory = FileChannel.open(dir, StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // The rename is still atomic, only possibly not yet durable
+        }
+    }
+
+    private void fail(IOException error) {
+        lock.lock();
+        try {
+            failure = error;
+            batchCommitted.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop accepting appends, write and fsync what is already queued, and close the file
+     */
+    @Override
+    public void close() throws IOException {
+        Thread running;
+        lock.lock();
+        try {
+            closed = true;
+            recordsPending.signalAll();
+            running = writer;
+        } finally {
+            lock.unlock();
+        }
+        if (running != null) {
+            try {
+                running.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        fileLock.lock();
+        try {
+            channel.close();
+        } finally {
+            fileLock.unlock();
+        }
+    }
+
+    public Path getPath() {
+        return dir;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Bytes in the snapshot and the segments, including records replayed on open
+     */
+    public long getSize() {
+        return sealedBytes + size;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getSyncs() {
+        return syncs;
+    }
+
+    public int getPending() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * Time from append to fsync per record over the last minute; in ASYNC mode, how far durability lags appends
+     */
+    public RollingLatencyHistogram.Snapshot commitLatency() {
+        return commitLatency.snapshot();
+    }
+}
@@ -0,0 +1,130 @@
+package com.mach33.research.agent;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Latency of AUTO fan-out with and without hedging, against agents with a straggler tail:
+ * most calls take 20-40 ms, STRAGGLER_RATE of them take 500 ms.
+ * Not part of the default test run; run with
+ * mvn test -Dtest=AgentFanOutBenchmark
+ */
+class AgentFanOutBenchmark {
+
+    private static final double STRAGGLER_RATE = 0.03;
+    private static final int REQUESTS = 2000;
+    private static final int CALLERS = 32;
+    private static final Duration DEADLINE = Duration.ofSeconds(2);
+    private static final Duration HEDGE_DELAY = Duration.ofMillis(60);
+
+    private final ExecutorService agentPool = Executors.newCachedThreadPool();
+    private final ScheduledExecutorService hedgeScheduler = Executors.newSingleThreadScheduledExecutor();
+    private final ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+    private final AgentFanOut fanOut = new AgentFanOut(agentPool, hedgeScheduler,
+            (provider, prompt) -> provider.generate(prompt, chunk -> { }));
+    private final List<AgentProvider> agents = List.of(
+            new StragglingAgent("CLAUDE"), new StragglingAgent("CHATGPT"), new StragglingAgent("GROK"));
+
+    @AfterEach
+    void shutDown() {
+        callers.shutdownNow();
+        hedgeScheduler.shutdownNow();
+        agentPool.shutdownNow();
+    }
+
+    @Test
+    void hedgingCutsTheTail() throws Exception {
+        long[] single = measure(() -> agents.get(0).generate("prompt", chunk -> { }));
+        long[] ensemble = measure(() -> dispatch(AgentFanOut.Mode.ENSEMBLE, 1));
+        long[] ensembleHedged = measure(() -> dispatch(AgentFanOut.Mode.ENSEMBLE, 2));
+        long[] first = measure(() -> dispatch(AgentFanOut.Mode.FIRST, 1));
+        long[] firstHedged = measure(() -> dispatch(AgentFanOut.Mode.FIRST, 2));
+
+        System.out.printf("%d requests, %d callers, %.0f%% stragglers, hedge after %d ms%n",
+                REQUESTS, CALLERS, STRAGGLER_RATE * 100, HEDGE_DELAY.toMillis());
+        report("single agent", single);
+        report("ENSEMBLE", ensemble);
+        report("ENSEMBLE hedged", ensembleHedged);
+        report("FIRST", first);
+        report("FIRST hedged", firstHedged);
+
+        assertThat(percentile(ensembleHedged, 0.99)).isLessThan(percentile(ensemble, 0.99));
+    }
+
+    private void dispatch(AgentFanOut.Mode mode, int maxAttempts) {
+        AgentFanOut.FanOutResult result = fanOut.dispatch(agents, "prompt", mode, DEADLINE, HEDGE_DELAY, maxAttempts);
+        assertThat(result.winner).isNotNull();
+    }
+
+    /**
+     * Run REQUESTS calls from CALLERS threads and return their latencies in microseconds, sorted
+     */
+    private long[] measure(Call call) throws Exception {
+        List<Future<Long>> futures = new ArrayList<>(REQUESTS);
+        for (int i = 0; i < REQUESTS; i++) {
+            futures.add(callers.submit(() -> {
+                long started = System.nanoTime();
+                call.run();
+                return (System.nanoTime() - started) / 1000;
+            }));
+        }
+        long[] micros = new long[REQUESTS];
+        for (int i = 0; i < REQUESTS; i++) {
+            micros[i] = futures.get(i).get();
+        }
+        Arrays.sort(micros);
+        return micros;
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+    private static void report(String label, long[] sorted) {
+        System.out.printf("%-16s p50 %6.1f ms  p99 %6.1f ms  max %6.1f ms%n", label,
+                percentile(sorted, 0.5) / 1000.0, percentile(sorted, 0.99) / 1000.0, sorted[sorted.length - 1] / 1000.0);
+    }
+
+    @FunctionalInterface
+    private interface Call {
+        void run() throws Exception;
+    }
+
+    private static final class StragglingAgent implements AgentProvider {
+        private final String agentType;
+
+        StragglingAgent(String agentType) {
+            this.agentType = agentType;
+        }
+
+        @Override
+        public String getAgentType() {
+            return agentType;
+        }
+
+        @Override
+        public String getModelName() {
+            return agentType.toLowerCase();
+        }
+
+        @Override
+        public AgentReply generate(String prompt, Consumer<String> onChunk) throws Exception {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            Thread.sleep(random.nextDouble() < STRAGGLER_RATE ? 500 : 20 + random.nextInt(21));
+            return new AgentReply(agentType, getModelName(), "answer", 0.5 + random.nextDouble() / 2);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.mach33.research.service;
+
+import com.mach33.research.agent.AgentType;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.function.IntFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Retained heap per chat message: the ChatMessageDto that history used to hold against StoredChatMessage.
+ * Half the messages are user messages and half AI replies, built the way each version of the service
+ * built them. Content is one shared string, so the figures are the per-message overhead on top of the text.
+ * Not part of the default test run; run with
+ * mvn test -Dtest=ChatMessageFootprintBenchmark
+ */
+class ChatMessageFootprintBenchmark {
+
+    private static final int MESSAGES = 200_000;
+    private static final String CONTENT = "What does the latest literature say about reusable launch costs?";
+
+    @Test
+    void bytesPerMessage() {
+        double before = bytesPerMessage(ChatMessageFootprintBenchmark::dto);
+        double after = bytesPerMessage(ChatMessageFootprintBenchmark::stored);
+        System.out.printf("%d messages: ChatMessageDto %.0f bytes each, StoredChatMessage %.0f bytes each (%.0f%% less)%n",
+                MESSAGES, before, after, 100 * (1 - after / before));
+        assertThat(after).isLessThan(before);
+    }
+
+    /**
+     * As stored before: session id and agent type are per-request strings from the JSON body,
+     * and every message has its own metadata map
+     */
+    private static Object dto(int i) {
+        InMemoryChatService.ChatMessageDto message = new InMemoryChatService.ChatMessageDto();
+        message.id = (long) i;
+        message.content = CONTENT;
+        message.sessionId = new String("session-" + (i % 100));
+        message.timestamp = LocalDateTime.now();
+        message.messageType = "TEXT";
+        message.metadata = new HashMap<>();
+        if (i % 2 == 0) {
+            message.sender = "USER";
+        } else {
+            message.sender = "AI";
+            message.agentType = new String("CLAUDE");
+            message.metadata.put("confidence", 0.85);
+            message.metadata.put("processingTime", String.format("%.1fs", (i % 3000) / 1000.0));
+            message.metadata.put("model", "Claude-3.5-Sonnet");
+        }
+        return message;
+    }
+
+    private static Object stored(int i) {
+        if (i % 2 == 0) {
+            return new StoredChatMessage(i, CONTENT, StoredChatMessage.Sender.USER, null,
+                    StoredChatMessage.MessageType.TEXT, System.currentTimeMillis(), Double.NaN, -1, null, null);
+        }
+        return new StoredChatMessage(i, CONTENT, StoredChatMessage.Sender.AI, AgentType.CLAUDE,
+                StoredChatMessage.MessageType.TEXT, System.currentTimeMillis(), 0.85, i % 3000, "Claude-3.5-Sonnet", null);
+    }
+
+    private static double bytesPerMessage(IntFunction<Object> factory) {
+        Object[] retained = new Object[MESSAGES];
+        long baseline = usedHeap();
+        for (int i = 0; i < MESSAGES; i++) {
+            retained[i] = factory.apply(i);
+        }
+        long used = usedHeap() - baseline;
+        assertThat(retained[MESSAGES - 1]).isNotNull();
+        return (double) used / MESSAGES;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
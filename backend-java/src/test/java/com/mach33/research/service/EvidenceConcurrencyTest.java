@@ -0,0 +1,206 @@
+package com.mach33.research.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mach33.research.config.EvidenceProperties;
+import com.mach33.research.config.PersistenceProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Many threads creating, rescoring, tagging and linking the same evidence at once, while scoring rules
+ * change and rescoring jobs run: afterwards the running aggregates and indexes must agree with a recount
+ * of the items, no tag or link may be lost, and every item not verified by hand must end up scored with
+ * the last rules installed.
+ */
+class EvidenceConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int OPERATIONS_PER_THREAD = 5_000;
+    private static final String[] SESSIONS = {"s1", "s2", "s3"};
+    private static final String[] TYPES = {"PRIMARY", "SECONDARY", "TERTIARY"};
+    private static final String[] LINK_TYPES = {"SUPPORTS", "CONTRADICTS", "PARTIAL", "NEUTRAL"};
+    private static final int CLAIMS = 5;
+    private static final int MAX_ITEMS = THREADS * OPERATIONS_PER_THREAD;
+
+    private final InMemoryEvidenceService service = newService();
+    private final AtomicLongArray created = new AtomicLongArray(MAX_ITEMS);
+    private final Map<Long, Set<String>> tagsAdded = new ConcurrentHashMap<>();
+    private final Map<Long, Set<String>> linksAdded = new ConcurrentHashMap<>();
+
+    @Test
+    void concurrentMutationsKeepAggregatesAndIndexesConsistent() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            workers.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                    mutate(thread, i);
+                }
+                return null;
+            }));
+        }
+        Thread rescoring = new Thread(() -> rescoreUntilInterrupted(start));
+        rescoring.start();
+        long started = System.nanoTime();
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        pool.shutdown();
+        rescoring.interrupt();
+        rescoring.join();
+        while (service.getRescoreStatus().state.equals("RUNNING")) {
+            Thread.sleep(1);
+        }
+        System.out.printf("%d threads, %d operations in %.2f s: %.0f operations/s%n",
+                THREADS, THREADS * OPERATIONS_PER_THREAD, seconds, THREADS * OPERATIONS_PER_THREAD / seconds);
+
+        for (String sessionId : SESSIONS) {
+            assertSessionConsistent(sessionId);
+        }
+    }
+
+    /**
+     * Keep installing new scoring rules and rescoring, so rescores race with inserts and updates
+     */
+    private void rescoreUntilInterrupted(CountDownLatch start) {
+        try {
+            start.await();
+            while (!Thread.currentThread().isInterrupted()) {
+                ScoringRules rules = new ScoringRules();
+                rules.typeScores = new HashMap<>();
+                for (String type : TYPES) {
+                    rules.typeScores.put(type, ThreadLocalRandom.current().nextDouble());
+                }
+                service.installScoringRules(rules);
+                service.startRescoring();
+                Thread.sleep(2);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * One in four operations creates an item; the rest change a random item created so far
+     */
+    private void mutate(int thread, int i) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int slot = thread * OPERATIONS_PER_THREAD + i;
+        if (i % 4 == 0 || random.nextInt(4) == 0) {
+            String sessionId = SESSIONS[random.nextInt(SESSIONS.length)];
+            InMemoryEvidenceService.EvidenceDto item = service.createEvidence(
+                    "finding " + thread + "-" + i + " on launch cadence", sessionId, TYPES[random.nextInt(TYPES.length)],
+                    random.nextBoolean() ? "arxiv.org" : null);
+            created.set(slot, item.id);
+            return;
+        }
+        long id = created.get(random.nextInt(thread * OPERATIONS_PER_THREAD + 1));
+        if (id == 0) {
+            return;
+        }
+        switch (random.nextInt(3)) {
+            case 0 -> service.updateReliability(id, random.nextDouble(), "verified");
+            case 1 -> {
+                String tag = "tag-" + thread + "-" + i;
+                service.addTags(id, List.of(tag));
+                tagsAdded.computeIfAbsent(id, k -> ConcurrentHashMap.newKeySet()).add(tag);
+            }
+            default -> {
+                long claimId = 1 + random.nextInt(CLAIMS);
+                String linkType = LINK_TYPES[random.nextInt(LINK_TYPES.length)];
+                service.linkToClaim(id, claimId, linkType);
+                linksAdded.computeIfAbsent(id, k -> ConcurrentHashMap.newKeySet()).add(claimId + ":" + linkType + ":" + slot);
+            }
+        }
+    }
+
+    private void assertSessionConsistent(String sessionId) {
+        List<InMemoryEvidenceService.EvidenceDto> items = service.getEvidenceBySession(sessionId);
+        List<ScoringRules> history = service.getScoringHistory();
+        int latestVersion = history.get(history.size() - 1).version;
+        long[] byType = new long[TYPES.length];
+        double reliabilitySum = 0;
+        long linked = 0;
+        Map<Long, Set<Long>> evidenceByClaim = new HashMap<>();
+        Map<Long, Integer> linksByClaim = new HashMap<>();
+        for (InMemoryEvidenceService.EvidenceDto item : items) {
+            byType[List.of(TYPES).indexOf(item.type)]++;
+            reliabilitySum += item.reliabilityScore;
+            if (item.reliabilityReason == null) {
+                assertThat(item.scoringVersion).as("scoring version of %d", item.id).isEqualTo(latestVersion);
+            }
+            if (!item.linkedClaims.isEmpty()) {
+                linked++;
+            }
+            assertThat(new HashSet<>(item.tags)).as("tags of %d", item.id)
+                    .isEqualTo(tagsAdded.getOrDefault(item.id, Set.of()));
+            assertThat(item.linkedClaims).as("links of %d", item.id)
+                    .hasSize(linksAdded.getOrDefault(item.id, Set.of()).size());
+            for (InMemoryEvidenceService.ClaimLink link : item.linkedClaims) {
+                evidenceByClaim.computeIfAbsent(link.claimId, c -> new HashSet<>()).add(item.id);
+                linksByClaim.merge(link.claimId, 1, Integer::sum);
+            }
+        }
+
+        InMemoryEvidenceService.EvidenceStatistics stats = service.getEvidenceStatistics(sessionId);
+        assertThat(stats.totalEvidence).isEqualTo(items.size());
+        assertThat(stats.primaryCount).isEqualTo(byType[0]);
+        assertThat(stats.secondaryCount).isEqualTo(byType[1]);
+        assertThat(stats.tertiaryCount).isEqualTo(byType[2]);
+        assertThat(stats.linkedCount).isEqualTo(linked);
+        assertThat(stats.averageReliability).isCloseTo(reliabilitySum / items.size(), within(1e-9));
+
+        for (String type : TYPES) {
+            assertRanked(service.getEvidenceByType(sessionId, type), byType[List.of(TYPES).indexOf(type)]);
+        }
+        for (long claimId = 1; claimId <= CLAIMS; claimId++) {
+            Set<Long> expected = evidenceByClaim.getOrDefault(claimId, Set.of());
+            InMemoryEvidenceService.ClaimSupport support = service.getClaimSupport(sessionId, claimId);
+            assertThat(support.evidenceCount).isEqualTo(expected.size());
+            assertThat(support.totalLinks).isEqualTo(linksByClaim.getOrDefault(claimId, 0));
+            assertRanked(service.getEvidenceForClaim(sessionId, claimId), expected.size());
+        }
+    }
+
+    /**
+     * Each item once, most reliable first: a stale rank entry would list an item twice
+     */
+    private static void assertRanked(List<InMemoryEvidenceService.EvidenceDto> ranked, long expectedCount) {
+        assertThat(ranked).hasSize((int) expectedCount);
+        assertThat(ranked.stream().map(item -> item.id).distinct().count()).isEqualTo(expectedCount);
+        for (int i = 1; i < ranked.size(); i++) {
+            assertThat(ranked.get(i).reliabilityScore).isLessThanOrEqualTo(ranked.get(i - 1).reliabilityScore);
+        }
+    }
+
+    private static InMemoryEvidenceService newService() {
+        EvidenceProperties properties = new EvidenceProperties();
+        properties.getDuplicates().setEnabled(false);
+        StateJournal journal = new StateJournal(new PersistenceProperties(), new ObjectMapper(), new SimpleMeterRegistry());
+        InMemoryEvidenceService service = new InMemoryEvidenceService(properties, journal);
+        journal.afterSingletonsInstantiated();
+        return service;
+    }
+}
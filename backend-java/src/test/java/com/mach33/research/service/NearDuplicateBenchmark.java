@@ -0,0 +1,168 @@
+package com.mach33.research.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * NearDuplicateIndex against a brute-force scan that compares every new item's MinHash signature with
+ * every earlier canonical item, on a corpus where a quarter of the items are edited copies of earlier ones.
+ * Recall is the share of the scan's matches LSH also finds; each LSH match is also checked against the
+ * exact Jaccard similarity of the two texts' shingles.
+ * Not part of the default test run; run with
+ * mvn test -Dtest=NearDuplicateBenchmark
+ */
+class NearDuplicateBenchmark {
+
+    private static final int ITEMS = 8_000;
+    private static final int VOCABULARY = 2_000;
+    private static final int WORDS_PER_ITEM = 25;
+    private static final double COPY_RATE = 0.25;
+    private static final int[] EDITED_WORDS = {1, 2, 3, 6};
+    private static final double THRESHOLD = 0.8;
+    private static final int SHINGLE_LENGTH = 5;
+
+    @Test
+    void lshAgainstBruteForce() {
+        List<String> texts = corpus(new Random(19));
+        List<int[]> signatures = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            signatures.add(NearDuplicateIndex.signature(text));
+        }
+
+        NearDuplicateIndex index = new NearDuplicateIndex(THRESHOLD);
+        long[] lshMatch = new long[texts.size()];
+        long started = System.nanoTime();
+        for (int id = 0; id < texts.size(); id++) {
+            NearDuplicateIndex.Match match = index.register("session", id, signatures.get(id), () -> { });
+            lshMatch[id] = match != null ? match.canonicalId : -1;
+        }
+        long lshNanos = System.nanoTime() - started;
+
+        long[] scanMatch = new long[texts.size()];
+        List<Integer> canonical = new ArrayList<>();
+        started = System.nanoTime();
+        for (int id = 0; id < texts.size(); id++) {
+            scanMatch[id] = bestMatch(signatures, canonical, id);
+            if (scanMatch[id] < 0) {
+                canonical.add(id);
+            }
+        }
+        long scanNanos = System.nanoTime() - started;
+
+        int scanMatches = 0;
+        int lshMatches = 0;
+        int found = 0;
+        int exactAboveThreshold = 0;
+        double exactSum = 0;
+        for (int id = 0; id < texts.size(); id++) {
+            if (scanMatch[id] >= 0) {
+                scanMatches++;
+                if (lshMatch[id] >= 0) {
+                    found++;
+                }
+            }
+            if (lshMatch[id] >= 0) {
+                lshMatches++;
+                double exact = jaccard(texts.get(id), texts.get((int) lshMatch[id]));
+                exactSum += exact;
+                if (exact >= THRESHOLD) {
+                    exactAboveThreshold++;
+                }
+            }
+        }
+        double recall = (double) found / scanMatches;
+        System.out.printf("%d items, threshold %.2f: brute force %d matches in %.0f ms, LSH %d matches in %.0f ms (%.1fx)%n",
+                texts.size(), THRESHOLD, scanMatches, scanNanos / 1e6, lshMatches, lshNanos / 1e6,
+                (double) scanNanos / lshNanos);
+        System.out.printf("LSH recall %.4f; exact Jaccard of LSH matches: mean %.3f, %.1f%% at or above the threshold%n",
+                recall, exactSum / lshMatches, 100.0 * exactAboveThreshold / lshMatches);
+
+        assertThat(recall).isGreaterThan(0.95);
+        assertThat(lshNanos).isLessThan(scanNanos);
+    }
+
+    /**
+     * The most similar earlier canonical item at or above the threshold, or -1; what register does without LSH
+     */
+    private static long bestMatch(List<int[]> signatures, List<Integer> canonical, int id) {
+        int[] signature = signatures.get(id);
+        long best = -1;
+        double bestSimilarity = 0;
+        for (int candidate : canonical) {
+            int[] other = signatures.get(candidate);
+            int same = 0;
+            for (int h = 0; h < signature.length; h++) {
+                if (signature[h] == other[h]) {
+                    same++;
+                }
+            }
+            double similarity = (double) same / signature.length;
+            if (similarity >= THRESHOLD && similarity > bestSimilarity) {
+                best = candidate;
+                bestSimilarity = similarity;
+            }
+        }
+        return best;
+    }
+
+    private static double jaccard(String a, String b) {
+        Set<String> left = shingles(a);
+        Set<String> right = shingles(b);
+        int common = 0;
+        for (String shingle : left) {
+            if (right.contains(shingle)) {
+                common++;
+            }
+        }
+        return (double) common / (left.size() + right.size() - common);
+    }
+
+    private static Set<String> shingles(String text) {
+        String normalized = NearDuplicateIndex.normalize(text);
+        Set<String> shingles = new HashSet<>();
+        for (int start = 0; start + SHINGLE_LENGTH <= normalized.length(); start++) {
+            shingles.add(normalized.substring(start, start + SHINGLE_LENGTH));
+        }
+        return shingles;
+    }
+
+    /**
+     * Random sentences; COPY_RATE of them are an earlier original with a few words replaced
+     */
+    private static List<String> corpus(Random random) {
+        String[] vocabulary = new String[VOCABULARY];
+        for (int i = 0; i < VOCABULARY; i++) {
+            StringBuilder word = new StringBuilder();
+            for (int c = 3 + random.nextInt(6); c > 0; c--) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            vocabulary[i] = word.toString();
+        }
+        List<String[]> originals = new ArrayList<>();
+        List<String> texts = new ArrayList<>(ITEMS);
+        while (texts.size() < ITEMS) {
+            String[] words;
+            if (!originals.isEmpty() && random.nextDouble() < COPY_RATE) {
+                words = originals.get(random.nextInt(originals.size())).clone();
+                for (int edit = EDITED_WORDS[random.nextInt(EDITED_WORDS.length)]; edit > 0; edit--) {
+                    words[random.nextInt(words.length)] = vocabulary[random.nextInt(VOCABULARY)];
+                }
+            } else {
+                words = new String[WORDS_PER_ITEM];
+                for (int w = 0; w < words.length; w++) {
+                    words[w] = vocabulary[random.nextInt(VOCABULARY)];
+                }
+                originals.add(words);
+            }
+            texts.add(String.join(" ", words) + ".");
+        }
+        return texts;
+    }
+}
@@ -0,0 +1,265 @@
+package com.mach33.research.service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.mach33.research.agent.AgentProvider;
+import com.mach33.research.agent.AgentReply;
+import com.mach33.research.config.ChatProperties;
+import com.mach33.research.config.EvidenceProperties;
+import com.mach33.research.config.PersistenceProperties;
+import com.mach33.research.config.StatementProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * State written through the journal, compacted into a snapshot and replayed into fresh services must match
+ * what the services held before: evidence with its tags, links and scores, statements with every version,
+ * and chat history without the messages dropped over the disk budget.
+ */
+class StateJournalTest {
+
+    private static final String[] CHAT_SESSIONS = {"c1", "c2", "c3"};
+
+    @TempDir
+    Path dir;
+
+    private final List<StateJournal> journals = new ArrayList<>();
+    private final List<InMemoryChatService> chatServices = new ArrayList<>();
+
+    @AfterEach
+    void closeAll() {
+        chatServices.forEach(InMemoryChatService::shutdown);
+        journals.forEach(StateJournal::close);
+    }
+
+    @Test
+    void persistenceIsOptIn() throws IOException {
+        PersistenceProperties properties = new PersistenceProperties();
+        assertThat(properties.isEnabled()).isFalse();
+        StateJournal disabled = open(properties);
+        disabled.afterSingletonsInstantiated();
+        assertThat(disabled.append("test", "record")).isZero();
+        assertThat(disabled.getStatus().enabled).isFalse();
+        try (Stream<Path> files = Files.list(dir)) {
+            assertThat(files).isEmpty();
+        }
+
+        properties.setDir(dir.toString());
+        assertThat(properties.isEnabled()).isTrue();
+        StateJournal enabled = open(properties);
+        enabled.afterSingletonsInstantiated();
+        long sequence = enabled.append("test", "record");
+        assertThat(sequence).isPositive();
+        enabled.awaitDurable(sequence);
+        try (Stream<Path> files = Files.list(dir)) {
+            assertThat(files).isNotEmpty();
+        }
+    }
+
+    @Test
+    void evidenceSurvivesCompactionAndReopen() {
+        StateJournal journal = newJournal();
+        InMemoryEvidenceService evidence = new InMemoryEvidenceService(evidenceProperties(), journal);
+        journal.afterSingletonsInstantiated();
+        for (int i = 0; i < 5; i++) {
+            InMemoryEvidenceService.EvidenceDto item = evidence.createEvidence(
+                    "Finding number " + i + " from the trial", "s1", "PRIMARY", "https://example.org/" + i);
+            evidence.addTags(item.id, List.of("trial", "tag-" + i));
+            evidence.linkToClaim(item.id, 7L, i % 2 == 0 ? "supports" : "CONTRADICTS");
+        }
+        evidence.updateReliability(1L, 0.25, "retracted");
+        journal.snapshot();
+        // Changed after the snapshot, so replay reads both the snapshot and the segment after it
+        evidence.addTags(2L, List.of("late"));
+        evidence.createEvidence("A later finding", "s1", "SECONDARY", null);
+        Map<Long, String> before = describeEvidence(evidence);
+        journal.close();
+
+        StateJournal reopened = newJournal();
+        InMemoryEvidenceService restored = new InMemoryEvidenceService(evidenceProperties(), reopened);
+        reopened.afterSingletonsInstantiated();
+        assertThat(describeEvidence(restored)).isEqualTo(before);
+        assertThat(restored.getClaimSupport("s1", 7L).evidenceCount).isEqualTo(5);
+        assertThat(restored.getClaimSupport("s1", 7L).netStrength)
+                .isEqualTo(evidence.getClaimSupport("s1", 7L).netStrength);
+        assertThat(restored.createEvidence("Another finding", "s1", "PRIMARY", null).id).isEqualTo(7L);
+    }
+
+    @Test
+    void statementsKeepOneRecordPerRefinementAndEveryVersion() {
+        StateJournal journal = newJournal();
+        InMemoryResearchStatementService statements = new InMemoryResearchStatementService(new StatementProperties(), journal);
+        journal.afterSingletonsInstantiated();
+        Long id = statements.createStatement("Sleep improves recall", "s1", "HYPOTHESIS").id;
+        statements.refineStatement(id, "Sleep improves recall in adults", "narrowed population");
+        statements.refineStatement(id, "Eight hours of sleep improves recall in adults", "added dose");
+        journal.snapshot();
+        assertThat(journal.getStatus().lastSnapshotRecordsKept).isEqualTo(3);
+        statements.refineStatement(id, "Eight hours of sleep improves next-day recall in adults", "added timing");
+        journal.close();
+
+        StateJournal reopened = newJournal();
+        InMemoryResearchStatementService restored = new InMemoryResearchStatementService(new StatementProperties(), reopened);
+        reopened.afterSingletonsInstantiated();
+        assertThat(restored.getVersions(id)).hasSize(4);
+        assertThat(restored.getVersion(id, 1).text).isEqualTo("Sleep improves recall");
+        assertThat(restored.getVersion(id, 3).text).isEqualTo("Eight hours of sleep improves recall in adults");
+        assertThat(restored.getVersion(id, 3).notes).isEqualTo("added dose");
+        assertThat(restored.getVersion(id, 4).text).isEqualTo("Eight hours of sleep improves next-day recall in adults");
+        assertThat(restored.getStatementsBySession("s1")).singleElement()
+                .satisfies(statement -> assertThat(statement.refinementCount).isEqualTo(3));
+        restored.shutdown();
+        statements.shutdown();
+    }
+
+    @Test
+    void chatHistoryDroppedOverTheDiskBudgetStaysDropped() throws Exception {
+        StateJournal journal = newJournal();
+        InMemoryChatService chat = newChatService(journal);
+        journal.afterSingletonsInstantiated();
+        for (int i = 0; i < 600; i++) {
+            chat.sendMessage("message " + i, CHAT_SESSIONS[i % CHAT_SESSIONS.length], "CLAUDE");
+        }
+        Map<String, List<Long>> before = settledHistory(chat);
+        assertThat(before.values().stream().mapToInt(List::size).sum()).isLessThan(1200);
+        long lastId = before.values().stream().flatMap(List::stream).mapToLong(Long::longValue).max().orElseThrow();
+        journal.close();
+
+        // Replayed from the segments alone, the drop records hide what was dropped
+        StateJournal reopened = newJournal();
+        InMemoryChatService restored = newChatService(reopened);
+        reopened.afterSingletonsInstantiated();
+        assertThat(settledHistory(restored)).isEqualTo(before);
+
+        // Compaction deletes the dropped messages, and a reopen from the snapshot restores the same history
+        reopened.snapshot();
+        StateJournal.JournalStatus status = reopened.getStatus();
+        assertThat(status.lastSnapshotRecordsKept).isLessThan(status.lastSnapshotRecordsRead);
+        reopened.close();
+
+        StateJournal compacted = newJournal();
+        InMemoryChatService fromSnapshot = newChatService(compacted);
+        compacted.afterSingletonsInstantiated();
+        assertThat(settledHistory(fromSnapshot)).isEqualTo(before);
+        assertThat(fromSnapshot.sendMessage("after restart", "c1", "CLAUDE").id).isGreaterThan(lastId);
+    }
+
+    /**
+     * Message ids per session once the history store has stopped spilling and dropping
+     */
+    private static Map<String, List<Long>> settledHistory(InMemoryChatService chat) throws InterruptedException {
+        Map<String, List<Long>> previous = null;
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (System.nanoTime() < deadline) {
+            Map<String, List<Long>> current = new TreeMap<>();
+            for (String session : CHAT_SESSIONS) {
+                current.put(session, chat.getChatHistory(session).stream().map(message -> message.id).toList());
+            }
+            if (current.equals(previous)) {
+                return current;
+            }
+            previous = current;
+            Thread.sleep(200);
+        }
+        throw new AssertionError("Chat history did not settle");
+    }
+
+    /**
+     * Everything replay must restore about each item, as one comparable string
+     */
+    private static Map<Long, String> describeEvidence(InMemoryEvidenceService service) {
+        Map<Long, String> described = new TreeMap<>();
+        for (InMemoryEvidenceService.EvidenceDto item : service.getEvidenceBySession("s1")) {
+            List<String> links = item.linkedClaims.stream()
+                    .map(link -> link.claimId + ":" + link.linkType + ":" + link.strength).toList();
+            described.put(item.id, String.join("|", item.content, item.type, String.valueOf(item.source),
+                    String.valueOf(item.reliabilityScore), String.valueOf(item.reliabilityReason), item.status,
+                    String.valueOf(item.scoringVersion), item.tags.toString(), links.toString()));
+        }
+        return described;
+    }
+
+    private StateJournal newJournal() {
+        PersistenceProperties properties = new PersistenceProperties();
+        properties.setDir(dir.resolve("journal").toString());
+        properties.setSnapshotInterval(Duration.ZERO);
+        return open(properties);
+    }
+
+    private StateJournal open(PersistenceProperties properties) {
+        StateJournal journal = new StateJournal(properties, objectMapper(), new SimpleMeterRegistry());
+        journal.register("test", String.class, record -> { });
+        journals.add(journal);
+        return journal;
+    }
+
+    private InMemoryChatService newChatService(StateJournal journal) throws IOException {
+        ChatProperties properties = new ChatProperties();
+        properties.getCache().setEnabled(false);
+        properties.getDedupe().setEnabled(false);
+        ChatProperties.Retention retention = properties.getRetention();
+        retention.setHeapBudget(DataSize.ofKilobytes(16));
+        retention.setHotTailBytes(DataSize.ofKilobytes(1));
+        retention.setSegmentSize(DataSize.ofKilobytes(32));
+        retention.setDiskBudget(DataSize.ofKilobytes(64));
+        retention.setSpillDir(Files.createTempDirectory(dir, "spill").toString());
+        InMemoryChatService chat = new InMemoryChatService(List.of(new EchoProvider()), properties,
+                new SimpleMeterRegistry(), journal);
+        chatServices.add(chat);
+        return chat;
+    }
+
+    private static EvidenceProperties evidenceProperties() {
+        EvidenceProperties properties = new EvidenceProperties();
+        properties.getDuplicates().setEnabled(false);
+        return properties;
+    }
+
+    /**
+     * Configured as Spring Boot configures the application's mapper
+     */
+    private static ObjectMapper objectMapper() {
+        return JsonMapper.builder().findAndAddModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .build();
+    }
+
+    /**
+     * Replies at once with padding, so history outgrows the small budgets quickly
+     */
+    private static class EchoProvider implements AgentProvider {
+        @Override
+        public String getAgentType() {
+            return "CLAUDE";
+        }
+
+        @Override
+        public String getModelName() {
+            return "echo";
+        }
+
+        @Override
+        public AgentReply generate(String prompt, Consumer<String> onChunk) {
+            return new AgentReply("CLAUDE", "echo", "Echo: " + prompt + " " + "-".repeat(200), 0.9);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.mach33.research.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Time KeywordMatcher against the toLowerCase().contains loop it replaced on a large text;
+ * KeywordMatcherTest checks that the two agree.
+ * Not part of the default test run; run with
+ * mvn test -Dtest=KeywordMatcherBenchmark
+ */
+class KeywordMatcherBenchmark {
+
+    private static final String[] RESEARCH_KEYWORDS = {
+        "research", "study", "analysis", "evidence", "data", "methodology",
+        "hypothesis", "theory", "findings", "results", "conclusion", "literature"
+    };
+    private static final String[] FILLER = {
+        "the", "Quarterly", "REPORT", "market", "of", "Orbital", "launch", "cost", "per", "kilogram",
+        "Fell", "again", "while", "demand", "for", "satellite", "BANDWIDTH", "grew", "steadily", "in"
+    };
+    private static final int TEXT_CHARS = 20 * 1024 * 1024;
+    private static final int RUNS = 7;
+
+    @Test
+    void scanLargeText() {
+        String text = mixedCaseText(new Random(11));
+        KeywordMatcher matcher = KeywordMatcher.of(RESEARCH_KEYWORDS);
+        assertThat(matcher.matchedPatterns(text)).isEqualTo(containsLoop(text));
+
+        long matcherNanos = Long.MAX_VALUE;
+        long containsNanos = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            long started = System.nanoTime();
+            matcher.matchedPatterns(text);
+            matcherNanos = Math.min(matcherNanos, System.nanoTime() - started);
+            started = System.nanoTime();
+            containsLoop(text);
+            containsNanos = Math.min(containsNanos, System.nanoTime() - started);
+        }
+        System.out.printf("%d MB text, %d keywords, best of %d: KeywordMatcher %.1f ms, toLowerCase + contains %.1f ms%n",
+                TEXT_CHARS >> 20, RESEARCH_KEYWORDS.length, RUNS, matcherNanos / 1e6, containsNanos / 1e6);
+    }
+
+    private static boolean[] containsLoop(String text) {
+        String lower = text.toLowerCase();
+        boolean[] matched = new boolean[RESEARCH_KEYWORDS.length];
+        for (int i = 0; i < RESEARCH_KEYWORDS.length; i++) {
+            matched[i] = lower.contains(RESEARCH_KEYWORDS[i]);
+        }
+        return matched;
+    }
+
+    /**
+     * Filler prose with a research keyword near the end, so contains has to scan most of the text
+     */
+    private static String mixedCaseText(Random random) {
+        StringBuilder text = new StringBuilder(TEXT_CHARS + 64);
+        while (text.length() < TEXT_CHARS) {
+            text.append(FILLER[random.nextInt(FILLER.length)]).append(random.nextInt(10) == 0 ? ". " : " ");
+        }
+        return text.append("Conclusion: see the Findings.").toString();
+    }
+}
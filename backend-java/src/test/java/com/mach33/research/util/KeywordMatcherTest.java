@@ -0,0 +1,95 @@
+package com.mach33.research.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * KeywordMatcher must agree with toLowerCase().contains, the loop it replaced, on every pattern,
+ * whole texts and ranges alike
+ */
+class KeywordMatcherTest {
+
+    @Test
+    void agreesWithContains() {
+        Random random = new Random(7);
+        for (int i = 0; i < 20_000; i++) {
+            String[] patterns = randomPatterns(random);
+            String text = randomWord(random, random.nextInt(40));
+            boolean[] matched = KeywordMatcher.of(patterns).matchedPatterns(text);
+            String lower = text.toLowerCase(Locale.ROOT);
+            for (int p = 0; p < patterns.length; p++) {
+                assertThat(matched[p])
+                        .as("pattern %s in %s", patterns[p], text)
+                        .isEqualTo(lower.contains(patterns[p].toLowerCase(Locale.ROOT)));
+            }
+        }
+    }
+
+    @Test
+    void rangesAgreeWithContainsOnTheSubstring() {
+        Random random = new Random(13);
+        for (int i = 0; i < 20_000; i++) {
+            String[] patterns = randomPatterns(random);
+            String text = randomWord(random, random.nextInt(40));
+            int start = random.nextInt(text.length() + 1);
+            int end = start + random.nextInt(text.length() - start + 1);
+            KeywordMatcher matcher = KeywordMatcher.of(patterns);
+            String lower = text.substring(start, end).toLowerCase(Locale.ROOT);
+            boolean[] matched = matcher.matchedPatterns(text, start, end);
+            boolean any = false;
+            for (int p = 0; p < patterns.length; p++) {
+                boolean expected = lower.contains(patterns[p].toLowerCase(Locale.ROOT));
+                assertThat(matched[p]).as("pattern %s in %s[%d, %d)", patterns[p], text, start, end).isEqualTo(expected);
+                any |= expected;
+            }
+            assertThat(matcher.containsAny(text, start, end)).as("any pattern in %s[%d, %d)", text, start, end).isEqualTo(any);
+        }
+    }
+
+    @Test
+    void foldsCaseOutsideAscii() {
+        KeywordMatcher matcher = KeywordMatcher.of("étude", "Ångström");
+        assertThat(matcher.matchedPatterns("Une ÉTUDE en ÅNGSTRÖM")).containsExactly(true, true);
+        assertThat(matcher.containsAny("une etude")).isFalse();
+    }
+
+    @Test
+    void reportsEveryOverlappingPattern() {
+        KeywordMatcher matcher = KeywordMatcher.of("data", "at", "database", "base");
+        assertThat(matcher.matchedPatterns("DATABASE")).containsExactly(true, true, true, true);
+        assertThat(matcher.matchedPatterns("datum")).containsExactly(false, true, false, false);
+    }
+
+    @Test
+    void handlesNullTextAndRejectsEmptyPatterns() {
+        KeywordMatcher matcher = KeywordMatcher.of("study");
+        assertThat(matcher.containsAny(null)).isFalse();
+        assertThat(matcher.matchedPatterns(null)).containsExactly(false);
+        assertThatThrownBy(() -> KeywordMatcher.of("study", "")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static String[] randomPatterns(Random random) {
+        String[] patterns = new String[1 + random.nextInt(6)];
+        for (int p = 0; p < patterns.length; p++) {
+            patterns[p] = randomWord(random, 1 + random.nextInt(4));
+        }
+        return patterns;
+    }
+
+    /**
+     * Mixed-case words over a three-letter alphabet, so patterns overlap and share prefixes often
+     */
+    private static String randomWord(Random random, int length) {
+        StringBuilder word = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            char c = (char) ('a' + random.nextInt(3));
+            word.append(random.nextBoolean() ? Character.toUpperCase(c) : c);
+        }
+        return word.toString();
+    }
+}
@@ -0,0 +1,170 @@
+package com.mach33.research.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Records written to the log come back in order after a reopen; a torn tail is cut off; compaction keeps
+ * the last record per key and the live records, and a reopen cleans up after a compaction that stopped halfway.
+ */
+class WriteAheadLogTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replaysRecordsInAppendOrder() throws IOException {
+        List<String> written = new ArrayList<>();
+        try (WriteAheadLog log = open(new ArrayList<>())) {
+            long sequence = 0;
+            for (int i = 0; i < 200; i++) {
+                written.add("record-" + i);
+                sequence = log.append(bytes("record-" + i));
+            }
+            log.awaitDurable(sequence);
+        }
+
+        List<String> replayed = new ArrayList<>();
+        open(replayed).close();
+        assertThat(replayed).isEqualTo(written);
+    }
+
+    @Test
+    void truncatesATornTailAndAppendsAfterIt() throws IOException {
+        try (WriteAheadLog log = open(new ArrayList<>())) {
+            append(log, "a", "b", "c");
+        }
+        Path segment = onlySegment();
+        long intact = Files.size(segment);
+        // A header promising more bytes than were written, as a crash mid-write leaves it
+        Files.write(segment, new byte[] { 0, 0, 0, 100, 1, 2, 3, 4, 'x' }, StandardOpenOption.APPEND);
+
+        List<String> replayed = new ArrayList<>();
+        try (WriteAheadLog log = open(replayed)) {
+            assertThat(replayed).containsExactly("a", "b", "c");
+            assertThat(Files.size(segment)).isEqualTo(intact);
+            append(log, "d");
+        }
+
+        replayed.clear();
+        open(replayed).close();
+        assertThat(replayed).containsExactly("a", "b", "c", "d");
+    }
+
+    @Test
+    void compactionKeepsTheLastRecordPerKeyAndEveryRecordWithoutOne() throws IOException {
+        try (WriteAheadLog log = open(new ArrayList<>())) {
+            append(log, "k1=a", "k2=a", "k1=b", "plain", "k2=b", "k3=a");
+            WriteAheadLog.Compaction compaction = log.compact(WriteAheadLogTest::keyOf);
+            assertThat(compaction.recordsRead()).isEqualTo(6);
+            assertThat(compaction.recordsKept()).isEqualTo(4);
+            assertThat(log.compact(WriteAheadLogTest::keyOf)).isNull();
+
+            append(log, "k3=b");
+        }
+
+        List<String> replayed = new ArrayList<>();
+        try (WriteAheadLog log = open(replayed)) {
+            assertThat(replayed).containsExactly("k1=b", "plain", "k2=b", "k3=a", "k3=b");
+            log.compact(WriteAheadLogTest::keyOf);
+        }
+
+        replayed.clear();
+        open(replayed).close();
+        assertThat(replayed).containsExactly("k1=b", "plain", "k2=b", "k3=b");
+    }
+
+    @Test
+    void compactionDropsRecordsThatAreNoLongerLive() throws IOException {
+        try (WriteAheadLog log = open(new ArrayList<>())) {
+            append(log, "k1=a", "gone", "plain", "k2=gone");
+            WriteAheadLog.Compaction compaction = log.compact(WriteAheadLogTest::keyOf,
+                    payload -> !new String(payload, StandardCharsets.UTF_8).endsWith("gone"));
+            assertThat(compaction.recordsKept()).isEqualTo(2);
+        }
+
+        List<String> replayed = new ArrayList<>();
+        open(replayed).close();
+        assertThat(replayed).containsExactly("k1=a", "plain");
+    }
+
+    @Test
+    void reopenRemovesWhatAnInterruptedCompactionLeftBehind() throws IOException {
+        Path sealedSegment;
+        byte[] sealedContent;
+        try (WriteAheadLog log = open(new ArrayList<>())) {
+            append(log, "k1=a", "k1=b");
+            sealedSegment = onlySegment();
+            sealedContent = Files.readAllBytes(sealedSegment);
+            log.compact(WriteAheadLogTest::keyOf);
+        }
+        Path snapshot = onlyFile("snapshot-");
+        // The snapshot was renamed into place, but the inputs and the previous snapshot were not deleted yet,
+        // and a later compaction stopped before renaming its temporary file
+        Files.write(sealedSegment, sealedContent);
+        Path olderSnapshot = dir.resolve("snapshot-0000000000.wal");
+        Files.write(olderSnapshot, sealedContent);
+        Path temporary = dir.resolve("snapshot-0000000099.wal.tmp");
+        Files.write(temporary, new byte[] { 1, 2, 3 });
+
+        List<String> replayed = new ArrayList<>();
+        open(replayed).close();
+        assertThat(replayed).containsExactly("k1=b");
+        assertThat(sealedSegment).doesNotExist();
+        assertThat(olderSnapshot).doesNotExist();
+        assertThat(temporary).doesNotExist();
+        assertThat(snapshot).exists();
+    }
+
+    private WriteAheadLog open(List<String> replayed) throws IOException {
+        WriteAheadLog log = new WriteAheadLog(dir, WriteAheadLog.Durability.SYNC, Duration.ZERO, 16);
+        log.replay(payload -> replayed.add(new String(payload, StandardCharsets.UTF_8)));
+        log.start();
+        return log;
+    }
+
+    private static void append(WriteAheadLog log, String... records) {
+        long sequence = 0;
+        for (String record : records) {
+            sequence = log.append(bytes(record));
+        }
+        log.awaitDurable(sequence);
+    }
+
+    private Path onlySegment() throws IOException {
+        return onlyFile("segment-");
+    }
+
+    private Path onlyFile(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> matching = files.filter(file -> file.getFileName().toString().startsWith(prefix)).toList();
+            assertThat(matching).hasSize(1);
+            return matching.get(0);
+        }
+    }
+
+    /**
+     * "key=value" records are keyed, anything else is not
+     */
+    private static String keyOf(byte[] payload) {
+        String record = new String(payload, StandardCharsets.UTF_8);
+        int separator = record.indexOf('=');
+        return separator >= 0 ? record.substring(0, separator) : null;
+    }
+
+    private static byte[] bytes(String record) {
+        return record.getBytes(StandardCharsets.UTF_8);
+    }
+}